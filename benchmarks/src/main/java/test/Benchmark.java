@@ -0,0 +1,60 @@
+package test;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import rpc.Controller;
+import rpc.Tensor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the time per function call against a running server, like the table in JsonRPC-stream-server.py.
+ *
+ * Call: java test.Benchmark [jsonrpc2://localhost:2102] [function called with a tensor "feature"] [calls]
+ */
+public class Benchmark {
+
+    public static void main(String[] args) throws Throwable {
+        String serverURL = args.length > 0 ? args[0] : "jsonrpc2://localhost:2102";
+        String rpcFunction = args.length > 1 ? args[1] : "keras_test_numpy";
+        int calls = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        Controller controller = new Controller();
+        long start = System.currentTimeMillis();
+        controller.setupRpc(serverURL.startsWith("http") ? Controller.RpcType.JSON : Controller.RpcType.JSON_STREAM,
+                serverURL, rpcFunction, 15000, 15000, 0);
+        System.out.println("connected after " + (System.currentTimeMillis() - start) + "ms");
+
+        long[] latencies = new long[calls];
+        for (int i = 0; i < calls; i++) {
+            long t = System.nanoTime();
+            controller.getRpcProxy().invoke(new JSONRPC2Request("ping", i));
+            latencies[i] = System.nanoTime() - t;
+        }
+        report("ping", latencies);
+
+        Map<String, Object> paramters = new HashMap<String, Object>();
+        paramters.put("feature", Tensor.of(new float[][] { { 0, 0, 0, 1 }, { 0, 0, 0, 2 }, { 0, 0, 0, 3 } }));
+        paramters.put("rows", 3);
+        paramters.put("cols", 4);
+        for (int i = 0; i < calls; i++) {
+            long t = System.nanoTime();
+            controller.callRemoteFunction(paramters, i);
+            latencies[i] = System.nanoTime() - t;
+        }
+        report(rpcFunction, latencies);
+        controller.closeResources();
+    }
+
+    private static void report(String function, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long latency : sorted) {
+            sum += latency;
+        }
+        System.out.println(String.format("%-20s %7d calls: mean %.3fms, p50 %.3fms, p99 %.3fms", function,
+                sorted.length, sum / 1e6 / sorted.length, sorted[sorted.length / 2] / 1e6,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6));
+    }
+}
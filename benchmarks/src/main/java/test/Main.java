@@ -0,0 +1,40 @@
+package test;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import rpc.ControlFunctionResponse;
+import rpc.Controller;
+import rpc.Tensor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Main {
+
+    public static void main(String[] args) throws Throwable {
+        Controller controller = new Controller();
+        String serverURL = "jsonrpc2://localhost:2102";
+        String rpcFunction = "keras_test_numpy";
+        controller.setupRpc(Controller.RpcType.JSON_STREAM, serverURL, rpcFunction, 15000, 15000, 3);
+//        JsonRpcStreamProxy.main(args);
+        int requestID = 0;
+
+        JSONRPC2Request request = new JSONRPC2Request("ping", requestID++);
+        JSONRPC2Response response = controller.getRpcProxy().invoke(request);
+        if (response.indicatesSuccess()) {
+            System.out.println(response.getResult());
+        } else {
+            System.out.println(response.getError().getMessage());
+        }
+        final float[][] feature = new float[3][4];
+        feature[0][3] = 1;feature[1][3] = 2;feature[2][3] = 3;
+        Map<String, Object> paramters = new HashMap<String, Object>();
+        paramters.put("feature", Tensor.of(feature)); // sent as binary attachment, a numpy array on the Python side
+        paramters.put("rows", feature.length);
+        paramters.put("cols", feature[0].length);
+        ControlFunctionResponse result = controller.callRemoteFunction(paramters, requestID++);
+        System.out.println(Arrays.toString(result.getPredictResult()));
+        controller.closeResources();
+    }
+}
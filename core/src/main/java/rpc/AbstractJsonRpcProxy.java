@@ -0,0 +1,251 @@
+package rpc;//import static rpc.ControlFunctionResponse.EMPTY_FLOAT_ARRAY;
+//import static com.velasolaris.plugin.controller.rpc.rpc.ControlFunctionResponse.EMPTY_INT_ARRAY;
+//import static com.velasolaris.plugin.controller.rpc.rpc.ControlFunctionResponse.convertObjectArrayToFloats;
+//import static rpc.ControlFunctionResponse.convertObjectToInts;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+
+//import org.apache.commons.lang.ArrayUtils;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+//import com.velasolaris.plugin.controller.spi.PluginControllerException;
+
+/**
+ * Common base class for JSON-RPC proxies.
+ * 
+ * @author rkurmann
+ * @since 9.2
+ *
+ */
+public abstract class AbstractJsonRpcProxy extends RpcProxy {
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param rpcServerURL URL of the RPC server for the function calls, e.g. http://localhost:2102/control
+	 * @param rpcFunction Name of the RPC function, e.g. controlFlowrate
+	 * @param connectionTimeout Connection timeout [ms] 0 may mean wait forever.
+	 * @param readTimeout Read timeout [ms] 0 may mean wait forever.
+	 * @param verboseLevel Level of verbosity
+	 */
+	protected AbstractJsonRpcProxy(URL rpcServerURL, String rpcFunction, int connectionTimeout, int readTimeout,
+			int verboseLevel) {
+		super(rpcServerURL, rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+	}
+	
+	/**
+	 * Invoke a RPC function via JSON-RPC over the TCP socket.
+	 * 
+	 * @param request the JSON-RPC request
+	 * @return the JSON-RPC response
+	 * @throws Exception a for problems
+	 */
+	@Override
+	public JSONRPC2Response invoke(JSONRPC2Request request) throws Exception {
+		return invoke(request, NO_DEADLINE);
+	}
+
+	/**
+	 * Parses the pre-encoded request and invokes it. Subclasses may send the raw request directly.
+	 */
+	@Override
+	public JSONRPC2Response invoke(String rawRequest, Object requestId, long deadline) throws Exception {
+		return invoke(JSONRPC2Request.parse(rawRequest), deadline);
+	}
+
+	/**
+	 * Adds the deadline to the request envelope as non standard attribute "deadline".
+	 * 
+	 * @param request the JSON-RPC request
+	 * @param deadline Deadline [ms since the epoch] or {@link #NO_DEADLINE}
+	 */
+	protected static void applyDeadline(JSONRPC2Request request, long deadline) {
+		if (deadline != NO_DEADLINE) {
+			request.appendNonStdAttribute("deadline", deadline);
+		}
+	}
+
+	/**
+	 * Adds the priority to the request envelope as non standard attribute "priority", unless it is normal.
+	 * 
+	 * @param request the JSON-RPC request
+	 * @param priority priority class of the call
+	 */
+	protected static void applyPriority(JSONRPC2Request request, Priority priority) {
+		if (priority != Priority.NORMAL) {
+			request.appendNonStdAttribute("priority", priority.toAttribute());
+		}
+	}
+
+	/**
+	 * Returns the time left until the deadline, bounded by the read timeout.
+	 * 
+	 * @param deadline Deadline [ms since the epoch] or {@link #NO_DEADLINE}
+	 * @return timeout [ms], 0 may mean wait forever
+	 * @throws SocketTimeoutException if the deadline has passed
+	 */
+	protected int remainingTimeout(long deadline) throws SocketTimeoutException {
+		if (deadline == NO_DEADLINE) {
+			return readTimeout;
+		}
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+			throw new SocketTimeoutException("Deadline exceeded");
+		}
+		return readTimeout > 0 ? (int) Math.min(readTimeout, remaining) : (int) Math.min(Integer.MAX_VALUE, remaining);
+	}
+
+	/**
+	 * Starts the trace of the request if it is sampled, and requests the server timing with the non standard
+	 * attribute "timing".
+	 * 
+	 * @param request the JSON-RPC request
+	 * @return the trace, null if the request is not traced
+	 */
+	protected RequestTrace startTrace(JSONRPC2Request request) {
+		if (!isSampled()) {
+			return null;
+		}
+		request.appendNonStdAttribute("timing", true);
+		return new RequestTrace(request.getMethod(), request.getID());
+	}
+
+	/**
+	 * Returns whether the next request is traced.
+	 * 
+	 * @return true if the request is sampled
+	 */
+	protected boolean isSampled() {
+		return traceListener != null && ThreadLocalRandom.current().nextDouble() < traceSamplingRate;
+	}
+
+	/**
+	 * Completes the trace with the server timing of the response and passes it to the listener.
+	 * 
+	 * @param trace the trace or null
+	 * @param response the JSON-RPC response
+	 */
+	protected void finishTrace(RequestTrace trace, JSONRPC2Response response) {
+		if (trace == null) {
+			return;
+		}
+		trace.complete(response.getNonStdAttribute("timing"));
+		RequestTraceListener listener = traceListener;
+		if (listener != null && response.indicatesSuccess()) {
+			try {
+				listener.onTrace(trace);
+			} catch (RuntimeException e) {
+				sLog.log(Level.WARNING, "Trace listener failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the request to record, with the attributes of the call like "priority" but before the transport
+	 * adds attributes like "deadline" or "timing".
+	 * 
+	 * @param request the JSON-RPC request
+	 * @return the encoded request, null if recording is disabled
+	 */
+	protected String recordedRequest(JSONRPC2Request request) {
+		return recorder != null ? request.toString() : null;
+	}
+
+	/**
+	 * Appends the call to the recorder, if recording.
+	 * 
+	 * @param recordedRequest the request returned by {@link #recordedRequest(JSONRPC2Request)}, null if not recording
+	 * @param response the JSON-RPC response
+	 * @param timestamp time of the request [ms since the epoch]
+	 * @param start start of the call [ns, see System.nanoTime()]
+	 */
+	protected void record(String recordedRequest, JSONRPC2Response response, long timestamp, long start) {
+		TrafficRecorder recorder = this.recorder;
+		if (recordedRequest == null || recorder == null) {
+			return;
+		}
+		try {
+			recorder.record(timestamp, System.nanoTime() - start, recordedRequest, response.toString());
+		} catch (IOException e) {
+			sLog.warning("Recording failed: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public ControlFunctionResponse callRemoteFunction(Map<String, Object> parameters,int request_id)
+			throws Exception {
+		return callRemoteFunction(parameters, request_id, NO_DEADLINE);
+	}
+
+	@Override
+	public ControlFunctionResponse callRemoteFunction(Map<String, Object> parameters,int request_id, long deadline)
+			throws Exception {
+		return callRemoteFunction(parameters, request_id, deadline, Priority.NORMAL);
+	}
+
+	@Override
+	public ControlFunctionResponse callRemoteFunction(Map<String, Object> parameters,int request_id, long deadline,
+			Priority priority) throws Exception {
+				JSONRPC2Request request = createRequest(parameters, request_id);
+				applyPriority(request, priority);
+				JSONRPC2Response response = invoke(request, deadline);
+				ControlFunctionResponse result;
+				if (response.indicatesSuccess()) {
+					result = ControlFunctionResponse.fromResult(response.getResult());
+				} else {
+//					throw new PluginControllerException(response.getError());
+					throw new Exception(response.getError());
+				}
+				return result;
+			}
+
+	/**
+	 * Creates the request calling the RPC function with the parameters.
+	 * 
+	 * @param parameters Generic parameters
+	 * @param request_id id of the request
+	 * @return the JSON-RPC request
+	 * @throws Exception for problems
+	 */
+	protected JSONRPC2Request createRequest(Map<String, Object> parameters, int request_id) throws Exception {
+		// def control(simulationTime, status, sensors, sensorsUsed, properties,
+		// propertiesStr, preRun, controlSignalsUsed, numLogValues, stage,
+		// fixedTimestep, verboseLevel, parameters)
+		return new JSONRPC2Request(rpcFunction,
+				Arrays.asList(new Object[] {parameters}),
+//						ArrayUtils.toObject(sensorsUsed), convertFloatsToDoubles(properties), propertiesStr, preRun,
+//						ArrayUtils.toObject(controlSignalsUsed), logValues.length, stage, fixedTimestep, verboseLevel,
+//						/*parameters != null && false ? parameters :*/ emptyParamters }),
+				request_id);
+	}
+
+	@Override
+	public void setupRpc(Map<String, Object> parameters) throws Exception {
+		writeMsgToServer("hello: Java side connected to Server.");
+		sLog.info("Connected to Server");
+	}
+
+	/** Debug verbose level. */
+	public static final int VERBOSE_LEVEL_DEBUG = 2;
+	/** Standard verbose level. */
+	public static final int VERBOSE_LEVEL_STANDARD = 0;
+	/** Verbose level: Verbose (more thans standard output). */
+	public static final int VERBOSE_LEVEL_VERBOSE = 1;
+
+	@Override
+	public void writeMsgToServer(String str) throws Exception {
+//		if (verboseLevel >= SimpleRpcPluginController.VERBOSE_LEVEL_DEBUG) {
+		if (verboseLevel >= VERBOSE_LEVEL_DEBUG) {
+			sLog.fine("Write Message to Server: " + str);
+		}
+		invoke(new JSONRPC2Request("print", Arrays.asList(new Object[] { str }), 0));
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,203 @@
+package rpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Replaces tensors by attachment placeholders {"$tensor": index} and back.
+ * 
+ * A sparse tensor is replaced by {"$sparse": {"format": "csr", "shape": [rows, cols], "indptr": {"$tensor": i},
+ * "indices": {"$tensor": j}, "data": {"$tensor": k}}}.
+ * 
+ * @see Tensor
+ */
+final class Attachments {
+
+	/** Key of the attachment placeholder. */
+	static final String PLACEHOLDER = "$tensor";
+	/** Key of the sparse tensor placeholder. */
+	static final String SPARSE = "$sparse";
+
+	private Attachments() {
+	}
+
+	/**
+	 * Replaces the tensors and sparse tensors in the value, a list or map possibly nested, by placeholders.
+	 * 
+	 * @param value the parameters
+	 * @param tensors list the tensors are appended to
+	 * @return the parameters with placeholders, a copy if it contains tensors
+	 */
+	static Object extract(Object value, List<Tensor> tensors) {
+		if (value instanceof Tensor) {
+			tensors.add((Tensor) value);
+			JSONObject placeholder = new JSONObject();
+			placeholder.put(PLACEHOLDER, tensors.size() - 1);
+			return placeholder;
+		} else if (value instanceof SparseTensor) {
+			SparseTensor sparse = (SparseTensor) value;
+			JSONObject components = new JSONObject();
+			components.put("format", SparseTensor.CSR);
+			components.put("shape", sparse.getShape());
+			components.put("indptr", extract(sparse.getIndptr(), tensors));
+			components.put("indices", extract(sparse.getIndices(), tensors));
+			components.put("data", extract(sparse.getData(), tensors));
+			JSONObject placeholder = new JSONObject();
+			placeholder.put(SPARSE, components);
+			return placeholder;
+		} else if (value instanceof Map) {
+			int count = tensors.size();
+			Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				copy.put(entry.getKey(), extract(entry.getValue(), tensors));
+			}
+			return tensors.size() > count ? copy : value;
+		} else if (value instanceof List) {
+			int count = tensors.size();
+			List<Object> copy = new ArrayList<Object>();
+			for (Object element : (List<?>) value) {
+				copy.add(extract(element, tensors));
+			}
+			return tensors.size() > count ? copy : value;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns whether the value, a list or map possibly nested, contains tensors or sparse tensors.
+	 * 
+	 * @param value the parameters
+	 * @return true if the value contains tensors
+	 */
+	static boolean containsTensors(Object value) {
+		if (value instanceof Tensor || value instanceof SparseTensor) {
+			return true;
+		} else if (value instanceof Map) {
+			for (Object element : ((Map<?, ?>) value).values()) {
+				if (containsTensors(element)) {
+					return true;
+				}
+			}
+		} else if (value instanceof List) {
+			for (Object element : (List<?>) value) {
+				if (containsTensors(element)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the placeholders in the parsed JSON value by the tensors.
+	 * 
+	 * @param value the result
+	 * @param tensors the tensors of the attachments
+	 * @return the result with tensors
+	 */
+	static Object resolve(Object value, List<Tensor> tensors) {
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			if (object.size() == 1 && object.get(PLACEHOLDER) instanceof Number) {
+				return tensors.get(((Number) object.get(PLACEHOLDER)).intValue());
+			}
+			for (Map.Entry<String, Object> entry : object.entrySet()) {
+				entry.setValue(resolve(entry.getValue(), tensors));
+			}
+		} else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			for (int i = 0; i < array.size(); i++) {
+				array.set(i, resolve(array.get(i), tensors));
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Reads the attachments following the response, if any, and replaces their placeholders in the result.
+	 * 
+	 * @param channel the connection
+	 * @param response the response
+	 * @param timeout Read timeout [ms] 0 may mean wait forever.
+	 * @return raw bytes of the attachments, e.g. for recording
+	 * @throws IOException for IO problems
+	 */
+	static ByteBuffer[] read(FrameChannel channel, JSONRPC2Response response, int timeout) throws IOException {
+		Object headers = response.getNonStdAttribute("attachments");
+		if (!(headers instanceof List)) {
+			return Frame.NO_ATTACHMENTS;
+		}
+		List<?> headerList = (List<?>) headers;
+		ByteBuffer[] attachments = new ByteBuffer[headerList.size()];
+		List<Tensor> tensors = new ArrayList<Tensor>();
+		for (int i = 0; i < attachments.length; i++) {
+			JSONObject header = (JSONObject) headerList.get(i);
+			ByteBuffer data = ByteBuffer.allocate(((Number) header.get("nbytes")).intValue());
+			channel.readFully(data, timeout);
+			data.flip();
+			attachments[i] = data.asReadOnlyBuffer();
+			tensors.add(Tensor.fromHeader(header, data));
+		}
+		if (response.indicatesSuccess()) {
+			response.setResult(resolve(response.getResult(), tensors));
+		}
+		return attachments;
+	}
+
+	/**
+	 * Creates the tensors of attachments read at once, e.g. from a recording.
+	 * 
+	 * @param headers the "attachments" headers, null if none
+	 * @param data raw bytes of the attachments concatenated in the order of the headers
+	 * @return the tensors
+	 */
+	static List<Tensor> tensors(Object headers, ByteBuffer data) {
+		List<Tensor> tensors = new ArrayList<Tensor>();
+		if (headers instanceof List) {
+			for (Object header : (List<?>) headers) {
+				ByteBuffer attachment = data.duplicate();
+				attachment.limit(attachment.position() + ((Number) ((JSONObject) header).get("nbytes")).intValue());
+				data.position(attachment.limit());
+				tensors.add(Tensor.fromHeader((JSONObject) header, attachment.slice()));
+			}
+		}
+		return tensors;
+	}
+
+	/**
+	 * Returns the raw bytes of the tensors.
+	 * 
+	 * @param tensors the tensors
+	 * @return the data of the tensors
+	 */
+	static ByteBuffer[] data(List<Tensor> tensors) {
+		ByteBuffer[] data = new ByteBuffer[tensors.size()];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = tensors.get(i).getData();
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the attachment headers of the tensors.
+	 * 
+	 * @param tensors the tensors
+	 * @return list of headers
+	 */
+	static JSONArray headers(List<Tensor> tensors) {
+		JSONArray headers = new JSONArray();
+		for (Tensor tensor : tensors) {
+			headers.add(tensor.header());
+		}
+		return headers;
+	}
+}
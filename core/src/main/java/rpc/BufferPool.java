@@ -0,0 +1,116 @@
+package rpc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct (off-heap) byte buffers shared by all connections, organized in power of two size classes.
+ *
+ * Connections borrow a buffer only while a frame is in flight, such that hundreds of mostly idle connections
+ * do not each hold their own heap buffers.
+ *
+ * Size classes above the largest pooled class keep only a few free buffers each, such that a stream of large
+ * frames, e.g. batches of tensors, reuses its buffers instead of allocating direct memory for every frame.
+ *
+ * @see FrameChannel
+ */
+public class BufferPool {
+
+	/** Pool shared by all stream connections of the JVM. */
+	public static final BufferPool SHARED = new BufferPool(12, 22, 64, 2);
+
+	/** Capacity of the largest size class is 2^30 bytes, larger buffers are allocated for each request. */
+	private static final int MAX_CLASS_SHIFT = 30;
+
+	/** Capacity of the smallest size class is 2^minShift bytes. */
+	private final int minShift;
+	/** Capacity of the largest pooled size class is 2^maxShift bytes. Larger buffers are oversize. */
+	private final int maxShift;
+	/** Maximal number of free buffers kept per size class. */
+	private final int maxFreePerClass;
+	/** Maximal number of free buffers kept per oversize class, 0 to allocate oversize buffers for each request. */
+	private final int maxFreeOversize;
+	/** Free buffers per size class. */
+	private final List<Queue<ByteBuffer>> free;
+	/** Number of free buffers per size class. */
+	private final AtomicInteger[] freeCount;
+
+	/**
+	 * Constructor, oversize buffers are not pooled.
+	 *
+	 * @param minShift Capacity of the smallest size class is 2^minShift bytes, e.g. 12 for 4KB
+	 * @param maxShift Capacity of the largest pooled size class is 2^maxShift bytes, e.g. 22 for 4MB
+	 * @param maxFreePerClass Maximal number of free buffers kept per size class
+	 */
+	public BufferPool(int minShift, int maxShift, int maxFreePerClass) {
+		this(minShift, maxShift, maxFreePerClass, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param minShift Capacity of the smallest size class is 2^minShift bytes, e.g. 12 for 4KB
+	 * @param maxShift Capacity of the largest pooled size class is 2^maxShift bytes, e.g. 22 for 4MB
+	 * @param maxFreePerClass Maximal number of free buffers kept per size class
+	 * @param maxFreeOversize Maximal number of free buffers kept per size class above 2^maxShift bytes, e.g. 2
+	 */
+	public BufferPool(int minShift, int maxShift, int maxFreePerClass, int maxFreeOversize) {
+		this.minShift = minShift;
+		this.maxShift = maxShift;
+		this.maxFreePerClass = maxFreePerClass;
+		this.maxFreeOversize = maxFreeOversize;
+		int classes = (maxFreeOversize > 0 ? Math.max(maxShift, MAX_CLASS_SHIFT) : maxShift) - minShift + 1;
+		free = new ArrayList<Queue<ByteBuffer>>(classes);
+		freeCount = new AtomicInteger[classes];
+		for (int i = 0; i < classes; i++) {
+			free.add(new ConcurrentLinkedQueue<ByteBuffer>());
+			freeCount[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Borrows a cleared buffer with at least the given capacity. Must be returned with {@link #release(ByteBuffer)}.
+	 *
+	 * @param minCapacity minimal capacity [bytes]
+	 * @return the buffer
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int shift = Math.max(minShift, 32 - Integer.numberOfLeadingZeros(Math.max(1, minCapacity) - 1));
+		if (shift - minShift >= free.size()) {
+			return ByteBuffer.allocateDirect(minCapacity);
+		}
+		int sizeClass = shift - minShift;
+		ByteBuffer buffer = free.get(sizeClass).poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(1 << shift);
+		}
+		freeCount[sizeClass].decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer borrowed with {@link #acquire(int)} to the pool. The buffer must not be used afterwards.
+	 *
+	 * @param buffer the buffer, may be null
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || Integer.bitCount(buffer.capacity()) != 1) {
+			return;
+		}
+		int shift = Integer.numberOfTrailingZeros(buffer.capacity());
+		if (shift < minShift || shift - minShift >= free.size()) {
+			return;
+		}
+		int sizeClass = shift - minShift;
+		if (freeCount[sizeClass].incrementAndGet() > (shift > maxShift ? maxFreeOversize : maxFreePerClass)) {
+			freeCount[sizeClass].decrementAndGet();
+			return;
+		}
+		free.get(sizeClass).offer(buffer);
+	}
+}
@@ -23,6 +23,20 @@ public class ControlFunctionResponse {
 	public float[] getPredictResult() {
 		return predictResult;
 	}
+
+	/**
+	 * Creates the response from the result of a remote function returning (predictResult, count).
+	 * 
+	 * @param result JSON-RPC result
+	 * @return the response, with an empty predict result if the result is not an array
+	 */
+	public static ControlFunctionResponse fromResult(Object result) {
+		if (result instanceof JSONArray) {
+			Object[] resultArray = ((JSONArray) result).toArray();
+			return new ControlFunctionResponse(convertObjectArrayToFloats(resultArray[0]));
+		}
+		return new ControlFunctionResponse(EMPTY_FLOAT_ARRAY);
+	}
 	//	private int result_num;
 	
 	/**
@@ -91,17 +105,20 @@ public class ControlFunctionResponse {
 //	}
 
 	/**
-	 * Converts Object[] or JSONArray to float[]. Java cannot do that on its
+	 * Converts Object[], JSONArray or {@link Tensor} to float[]. Java cannot do that on its
 	 * own.
 	 * 
 	 * @param input
-	 *            Object[] or JSONArray
+	 *            Object[], JSONArray or Tensor
 	 * @return float array
 	 */
 	public static float[] convertObjectArrayToFloats(Object input) {
 		if (input == null) {
 			return null;
 		}
+		if (input instanceof Tensor) {
+			return ((Tensor) input).toFloatArray();
+		}
 		Object[] inputArray = null;
 		if (input instanceof Object[]) {
 			inputArray = (Object[]) input;
@@ -0,0 +1,534 @@
+package rpc;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParseException;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class Controller {
+    /** RPC Type */
+    public enum RpcType {
+        /**
+         * JSON-RPC as stream using one TCP socket. Non standard behaviour.
+         * Very fast and avoiding "java.net.BindException: Address already in use: connect" due to ephemeral TCP ports exhaustion on Windows PSA-4571.
+         */
+        JSON_STREAM,
+        /**
+         * JSON-RPC over HTTP as defined by standard.
+         * Could run into "java.net.BindException: Address already in use: connect" due to ephemeral TCP ports exhaustion, see PSA-4571.
+         */
+        JSON,
+        /** XML-RPC over HTTP as defined by standard. */
+        XML
+    }
+    /** Name of the RPC function to call. */
+    protected String rpcFunction;
+    /** The RPC proxy that calls the RPC server. */
+    private RpcProxy rpcProxy = null;
+    /** Type of RPC, JSON or XML. */
+    private RpcType rpcType;
+    /** URL of the webservice having the RPC control functions. */
+    protected String serverURL = null;
+
+    /** Connection timeout [ms]. 0 may mean wait forever. */
+    protected int connectionTimeout = 60000;
+
+    /** Read timeout [ms]. 0 may mean wait forever. */
+    protected int readTimeout = 0;
+    /** Verbose level. 0 = default 1 = verbose 2 = debug */
+    protected int verboseLevel;
+    /** URLs of replica servers serving the same functions. */
+    private List<String> replicaURLs = Collections.emptyList();
+    /** The RPC proxies of the replica servers. */
+    private final List<RpcProxy> replicaProxies = new ArrayList<RpcProxy>();
+    /** Policy for hedged requests, null if disabled. */
+    private HedgingPolicy hedgingPolicy;
+    /** Executor running hedged requests. */
+    private ExecutorService hedgeExecutor;
+    /** Requests of hedged calls in flight. */
+    private final Set<Attempt> hedgedAttempts = Collections.newSetFromMap(new ConcurrentHashMap<Attempt, Boolean>());
+    /** Warm-up run on setup, null if disabled. */
+    private WarmupPolicy warmupPolicy;
+    /** Duration of the last setup including the warm-up [ms]. */
+    private long timeToReady;
+    /** Listener receiving the traces of sampled requests, null if tracing is disabled. */
+    private RequestTraceListener traceListener;
+    /** Fraction of the requests traced. */
+    private double traceSamplingRate;
+    /** Recorder of the calls, null if recording is disabled. */
+    private TrafficRecorder recorder;
+    /** Whether concurrent callers share the stream connections. */
+    private boolean sharedConnection;
+    /** Precision of the float arrays of the results, null for full precision. */
+    private String resultPrecision;
+    /** Whether calls of other than normal priority get their own connections. */
+    private boolean dedicatedConnections;
+    /** The RPC proxies of the calls of other than normal priority, empty without dedicated connections. */
+    private final Map<Priority, RpcProxy> priorityProxies = new EnumMap<Priority, RpcProxy>(Priority.class);
+    public void disconnectProxy() {
+        if (rpcProxy != null) {
+            rpcProxy.disconnectProxy();
+        }
+        for (RpcProxy replica : replicaProxies) {
+            replica.disconnectProxy();
+        }
+        replicaProxies.clear();
+        for (RpcProxy priorityProxy : priorityProxies.values()) {
+            priorityProxy.disconnectProxy();
+        }
+        priorityProxies.clear();
+    }
+    public void closeResources() {
+        disconnectProxy();
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+            hedgeExecutor = null;
+        }
+    }
+    /**
+     * Sets up the RPC proxy.
+     *
+     * @throws Throwable
+     *             For any problems
+     * @see rpc.RpcProxy#setupRpc(java.util.Map)
+     */
+    public void setupRpc(RpcType rpcType,String serverURL,String rpcFunction, int connectionTimeout, int readTimeout,int verboseLevel) throws Throwable {
+        setupRpc(rpcType, serverURL, rpcFunction, connectionTimeout, readTimeout, verboseLevel, null);
+    }
+
+    /**
+     * Sets up the RPC proxy with a session. With {@link RpcType#JSON_STREAM}, the session parameters are
+     * registered once on the connection and each call sends only the parameters changed since the previous call.
+     *
+     * @param sessionParameters Parameters constant for the whole session, or null
+     * @throws Throwable
+     *             For any problems
+     * @see JsonRpcStreamProxy#setupRpc(Map)
+     */
+    public void setupRpc(RpcType rpcType,String serverURL,String rpcFunction, int connectionTimeout, int readTimeout,int verboseLevel,
+            Map<String, Object> sessionParameters) throws Throwable {
+        long start = System.currentTimeMillis();
+        disconnectProxy();
+        this.rpcType = rpcType;
+        this.serverURL = serverURL;
+        this.rpcFunction = rpcFunction;
+        rpcProxy = createProxy(rpcType, serverURL, rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+        rpcProxy.setupRpc(sessionParameters);
+        for (String replicaURL : replicaURLs) {
+            RpcProxy replica = createProxy(rpcType, replicaURL, rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+            replica.setupRpc(sessionParameters);
+            replicaProxies.add(replica);
+        }
+        if (dedicatedConnections) {
+            for (Priority priority : Priority.values()) {
+                if (priority != Priority.NORMAL) {
+                    RpcProxy priorityProxy = createProxy(rpcType, serverURL, rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+                    priorityProxy.setupRpc(sessionParameters);
+                    priorityProxies.put(priority, priorityProxy);
+                }
+            }
+        }
+        if (warmupPolicy != null) {
+            int rounds = warmupPolicy.run(rpcProxy);
+            for (RpcProxy replica : replicaProxies) {
+                rounds = Math.max(rounds, warmupPolicy.run(replica));
+            }
+            // The dedicated connections of the other priorities must not reach their first call cold either
+            for (RpcProxy priorityProxy : priorityProxies.values()) {
+                rounds = Math.max(rounds, warmupPolicy.run(priorityProxy));
+            }
+            RpcProxy.sLog.info("Warm-up finished after " + rounds + " rounds");
+        }
+        timeToReady = System.currentTimeMillis() - start;
+        RpcProxy.sLog.info("Ready after " + timeToReady + "ms");
+    }
+
+    private RpcProxy createProxy(RpcType rpcType, String serverURL, String rpcFunction, int connectionTimeout, int readTimeout, int verboseLevel) throws Throwable {
+        RpcProxy proxy = null;
+        if (rpcType == RpcType.JSON) {
+            proxy = new JsonRpcProxy(JsonRpcStreamProxy.parseURL(serverURL), rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+        } else if (rpcType == RpcType.JSON_STREAM) {
+            JsonRpcStreamProxy streamProxy = new JsonRpcStreamProxy(JsonRpcStreamProxy.parseURL(serverURL), rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+            streamProxy.setSharedConnection(sharedConnection);
+            streamProxy.setResultPrecision(resultPrecision);
+            proxy = streamProxy;
+        } /*else {
+            proxy = new XmlRpcProxy(new URL(serverURL), rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+        }*/
+        if (proxy != null) {
+            proxy.setTraceListener(traceListener, traceSamplingRate);
+            proxy.setRecorder(recorder);
+        }
+        return proxy;
+    }
+
+    /**
+     * Lets concurrent callers share each stream connection, coalescing their requests into gathering writes.
+     * Must be called before {@link #setupRpc(RpcType, String, String, int, int, int)}.
+     *
+     * @param sharedConnection true to share the connections
+     * @see JsonRpcStreamProxy#setSharedConnection(boolean)
+     */
+    public void setSharedConnection(boolean sharedConnection) {
+        this.sharedConnection = sharedConnection;
+    }
+
+    /**
+     * Requests the float arrays of the results with reduced precision, e.g. {@link Tensor#FLOAT16}.
+     * Must be called before {@link #setupRpc(RpcType, String, String, int, int, int)}.
+     *
+     * @param resultPrecision the precision, null for full precision
+     * @see JsonRpcStreamProxy#setResultPrecision(String)
+     */
+    public void setResultPrecision(String resultPrecision) {
+        this.resultPrecision = resultPrecision;
+    }
+
+    /**
+     * Gives the calls of high and bulk priority their own connections, such that bulk calls do not queue
+     * in front of latency-critical ones. The server must serve connections concurrently,
+     * e.g. the stream server with --workers. Must be called before {@link #setupRpc(RpcType, String, String, int, int, int)}.
+     *
+     * @param dedicatedConnections true for a connection per priority
+     * @see #callRemoteFunction(Map, int, long, Priority)
+     */
+    public void setDedicatedConnections(boolean dedicatedConnections) {
+        this.dedicatedConnections = dedicatedConnections;
+    }
+
+    /**
+     * Records the calls of all connections, including the replicas, for replaying them with {@link TrafficReplay}.
+     * The recorder is not closed by the controller.
+     *
+     * @param recorder the recorder, null disables recording
+     */
+    public void setRecorder(TrafficRecorder recorder) {
+        this.recorder = recorder;
+        if (rpcProxy != null) {
+            rpcProxy.setRecorder(recorder);
+        }
+        for (RpcProxy replica : replicaProxies) {
+            replica.setRecorder(recorder);
+        }
+        for (RpcProxy priorityProxy : priorityProxies.values()) {
+            priorityProxy.setRecorder(recorder);
+        }
+    }
+
+    /**
+     * Traces a sample of the requests of all connections, including the replicas.
+     *
+     * @param listener the listener, null disables tracing
+     * @param samplingRate fraction of the requests traced, e.g. 0.01 for 1%
+     * @see RpcProxy#setTraceListener(RequestTraceListener, double)
+     */
+    public void setTraceListener(RequestTraceListener listener, double samplingRate) {
+        this.traceListener = listener;
+        this.traceSamplingRate = samplingRate;
+        if (rpcProxy != null) {
+            rpcProxy.setTraceListener(listener, samplingRate);
+        }
+        for (RpcProxy replica : replicaProxies) {
+            replica.setTraceListener(listener, samplingRate);
+        }
+        for (RpcProxy priorityProxy : priorityProxies.values()) {
+            priorityProxy.setTraceListener(listener, samplingRate);
+        }
+    }
+
+    /**
+     * Sets the warm-up run by {@link #setupRpc(RpcType, String, String, int, int, int)} on every connection,
+     * such that setupRpc returns once the calls run at steady-state speed. Null disables the warm-up.
+     *
+     * @param warmupPolicy the warm-up policy or null
+     */
+    public void setWarmupPolicy(WarmupPolicy warmupPolicy) {
+        this.warmupPolicy = warmupPolicy;
+    }
+
+    /**
+     * Returns the time the last {@link #setupRpc(RpcType, String, String, int, int, int)} took
+     * to connect and warm up.
+     *
+     * @return time to ready [ms]
+     */
+    public long getTimeToReady() {
+        return timeToReady;
+    }
+
+    /**
+     * Sets the URLs of replica servers serving the same functions, used for hedged requests.
+     * Must be called before {@link #setupRpc(RpcType, String, String, int, int, int)}.
+     *
+     * @param replicaURLs URLs of the replica servers, e.g. jsonrpc2://otherhost:2102
+     */
+    public void setReplicaURLs(String... replicaURLs) {
+        this.replicaURLs = Arrays.asList(replicaURLs);
+    }
+
+    /**
+     * Enables hedged requests for the idempotent functions of the policy, null disables hedging.
+     * Hedging requires at least one replica, see {@link #setReplicaURLs(String...)}.
+     *
+     * @param hedgingPolicy the hedging policy or null
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+        if (hedgingPolicy != null && hedgeExecutor == null) {
+            hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "rpc-hedge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    public ControlFunctionResponse callRemoteFunction(Map<String, Object> parameters,int request_id)
+            throws Throwable {
+        return callRemoteFunction(parameters, request_id, RpcProxy.NO_DEADLINE);
+    }
+
+    /**
+     * Calls the remote function with a deadline, see {@link RpcProxy#callRemoteFunction(Map, int, long)}.
+     * Calls of idempotent functions are hedged if a {@link HedgingPolicy} is set.
+     *
+     * @param deadline Deadline [ms since the epoch] or {@link RpcProxy#NO_DEADLINE}
+     */
+    public ControlFunctionResponse callRemoteFunction(Map<String, Object> parameters, int request_id, long deadline)
+            throws Throwable {
+        return callRemoteFunction(parameters, request_id, deadline, Priority.NORMAL);
+    }
+
+    /**
+     * Calls the remote function with a deadline and a priority class. Requests of higher priority are written
+     * and executed first, see {@link Priority}. With {@link #setDedicatedConnections(boolean)} the call is sent
+     * over the connection of its priority.
+     *
+     * @param deadline Deadline [ms since the epoch] or {@link RpcProxy#NO_DEADLINE}
+     * @param priority the priority class
+     */
+    public ControlFunctionResponse callRemoteFunction(Map<String, Object> parameters, int request_id, long deadline,
+            Priority priority) throws Throwable {
+        if (hedgingPolicy != null && !replicaProxies.isEmpty() && hedgingPolicy.isIdempotent(rpcFunction)) {
+            return callHedged(parameters, request_id, deadline, priority);
+        }
+        return proxyFor(priority).callRemoteFunction(parameters, request_id, deadline, priority);
+    }
+
+    /**
+     * Returns the proxy of the calls of the priority.
+     */
+    private RpcProxy proxyFor(Priority priority) {
+        RpcProxy priorityProxy = priorityProxies.get(priority);
+        return priorityProxy != null ? priorityProxy : rpcProxy;
+    }
+
+    /**
+     * Calls a sequence of remote functions in one round trip, each with the result of the previous one,
+     * see {@link RpcProxy#callPipeline(List, Map, int, long)}.
+     *
+     * @param functions names of the functions, e.g. keras_preprocess, keras_predict, keras_postprocess
+     * @param parameters Generic parameters of the first function
+     */
+    public ControlFunctionResponse callPipeline(List<String> functions, Map<String, Object> parameters, int request_id)
+            throws Throwable {
+        return callPipeline(functions, parameters, request_id, RpcProxy.NO_DEADLINE);
+    }
+
+    /**
+     * Calls a sequence of remote functions in one round trip with a deadline.
+     *
+     * @param deadline Deadline [ms since the epoch] or {@link RpcProxy#NO_DEADLINE}
+     * @see #callPipeline(List, Map, int)
+     */
+    public ControlFunctionResponse callPipeline(List<String> functions, Map<String, Object> parameters, int request_id,
+            long deadline) throws Throwable {
+        return rpcProxy.callPipeline(functions, parameters, request_id, deadline);
+    }
+
+    /**
+     * Calls the remote function on the next endpoint and, if it has not completed after the hedge delay,
+     * a second time on the following endpoint. The first successful response wins, the other request is cancelled.
+     * Each attempt is sent with an id of its proxy, such that cancelling the loser cannot hit another call
+     * reusing the caller's request_id. The latency of the winner is measured from its own start.
+     */
+    private ControlFunctionResponse callHedged(final Map<String, Object> parameters, final int request_id, final long deadline,
+            Priority priority) throws Throwable {
+        int size = replicaProxies.size() + 1;
+        int primaryIndex = (int) (hedgingPolicy.getCalls() % size);
+        final RpcProxy primary = primaryIndex == 0 ? proxyFor(priority) : replicaProxies.get(primaryIndex - 1);
+        final RpcProxy backup = primaryIndex + 1 == size ? proxyFor(priority) : replicaProxies.get(primaryIndex);
+        hedgingPolicy.recordCall();
+
+        CompletionService<ControlFunctionResponse> completionService = new ExecutorCompletionService<ControlFunctionResponse>(hedgeExecutor);
+        Map<Future<ControlFunctionResponse>, Attempt> pending = new HashMap<Future<ControlFunctionResponse>, Attempt>();
+        List<Attempt> attempts = new ArrayList<Attempt>(2);
+        try {
+            submit(completionService, pending, attempts, new Attempt(primary, request_id), parameters, deadline, priority);
+            Future<ControlFunctionResponse> done = completionService.poll(hedgingPolicy.getHedgeDelay(), TimeUnit.MILLISECONDS);
+            if (done == null && hedgingPolicy.tryAcquireHedge()) {
+                submit(completionService, pending, attempts, new Attempt(backup, request_id), parameters, deadline, priority);
+            }
+            Throwable failure = null;
+            while (!pending.isEmpty()) {
+                if (done == null) {
+                    done = completionService.take();
+                }
+                Attempt attempt = pending.remove(done);
+                try {
+                    ControlFunctionResponse result = done.get();
+                    hedgingPolicy.recordLatency(System.nanoTime() - attempt.start);
+                    for (Attempt loser : pending.values()) {
+                        loser.proxy.cancel(loser.id);
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    // Wait for the other request, if any
+                    failure = e.getCause();
+                }
+                done = null;
+            }
+            throw failure;
+        } finally {
+            hedgedAttempts.removeAll(attempts);
+        }
+    }
+
+    /**
+     * A request of a hedged call.
+     */
+    private static class Attempt {
+        /** Proxy of the endpoint. */
+        final RpcProxy proxy;
+        /** Id of the request, unique on the proxy. */
+        final long id;
+        /** Id of the call given by the caller, for {@link Controller#cancel(Object)}. */
+        final String callerId;
+        /** Start of the request [ns], set when submitted. */
+        long start;
+
+        Attempt(RpcProxy proxy, int callerId) {
+            this.proxy = proxy;
+            this.id = proxy.nextRequestId();
+            this.callerId = String.valueOf(callerId);
+        }
+    }
+
+    /**
+     * Sends the attempt by the executor of the completion service.
+     */
+    private void submit(CompletionService<ControlFunctionResponse> completionService,
+            Map<Future<ControlFunctionResponse>, Attempt> pending, List<Attempt> attempts, final Attempt attempt,
+            final Map<String, Object> parameters, final long deadline, final Priority priority) {
+        attempts.add(attempt);
+        // Registered before sending, such that a concurrent cancel(request_id) finds the attempt
+        hedgedAttempts.add(attempt);
+        final JSONRPC2Request request = new JSONRPC2Request(rpcFunction, Arrays.asList(new Object[] { parameters }), attempt.id);
+        if (priority != Priority.NORMAL) {
+            request.appendNonStdAttribute("priority", priority.toAttribute());
+        }
+        attempt.start = System.nanoTime();
+        pending.put(completionService.submit(new Callable<ControlFunctionResponse>() {
+            public ControlFunctionResponse call() throws Exception {
+                JSONRPC2Response response = attempt.proxy.invoke(request, deadline);
+                if (!response.indicatesSuccess()) {
+                    throw new Exception(response.getError());
+                }
+                return ControlFunctionResponse.fromResult(response.getResult());
+            }
+        }), attempt);
+    }
+
+    /**
+     * Cancels a queued or running request, see {@link RpcProxy#cancel(Object)}.
+     */
+    public void cancel(Object requestId) throws Exception {
+        String key = String.valueOf(requestId);
+        for (Attempt attempt : hedgedAttempts) {
+            if (key.equals(attempt.callerId)) {
+                attempt.proxy.cancel(attempt.id);
+            }
+        }
+        rpcProxy.cancel(requestId);
+        for (RpcProxy replica : replicaProxies) {
+            replica.cancel(requestId);
+        }
+        for (RpcProxy priorityProxy : priorityProxies.values()) {
+            priorityProxy.cancel(requestId);
+        }
+    }
+
+    /**
+     * Returns the statistics of the lazily loaded models of the server, see models.py: the "budget" and the
+     * size of the loaded models "used" [bytes], and by function name in "models" whether the model is "loaded",
+     * its "nbytes", "loads", "hits", "evictions" and "load_millis". The statistics are those of the server process
+     * serving the connection.
+     *
+     * @return the statistics
+     * @throws Exception for problems, e.g. a server without the method "model_stats"
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getModelStats() throws Exception {
+        JSONRPC2Response response = rpcProxy.invoke(new JSONRPC2Request("model_stats", "model_stats"));
+        if (!response.indicatesSuccess()) {
+            throw new Exception(response.getError());
+        }
+        return (Map<String, Object>) response.getResult();
+    }
+
+    /**
+     * Creates a typed stub whose methods call the remote functions of the same name, or the name given by
+     * {@link RemoteFunction}. The method parameters are the positional parameters of the remote function.
+     * The methods are validated against the functions the server describes, such that a misspelled name or
+     * wrong number of parameters fails here instead of on the first call.
+     *
+     * Supported return types are void, {@link ControlFunctionResponse}, float[], int[], String, numbers and Object
+     * (the raw JSON result). Stub methods should declare Exception for failed calls.
+     *
+     * @param stubInterface the stub interface, e.g. MyModel.class
+     * @return the stub
+     * @throws Exception for problems
+     * @throws IllegalArgumentException if the interface does not match the functions of the server
+     */
+    public <T> T createStub(Class<T> stubInterface) throws Exception {
+        return createStub(stubInterface, 0);
+    }
+
+    /**
+     * Creates a typed stub whose calls carry a deadline, see {@link #createStub(Class)}. A call not completed
+     * within the timeout is cancelled on the server and fails with a {@link java.net.SocketTimeoutException}.
+     *
+     * @param stubInterface the stub interface, e.g. MyModel.class
+     * @param callTimeout Timeout of each call [ms], 0 for calls without deadline
+     * @return the stub
+     * @throws Exception for problems
+     * @throws IllegalArgumentException if the interface does not match the functions of the server
+     */
+    public <T> T createStub(Class<T> stubInterface, long callTimeout) throws Exception {
+        return StubInvocationHandler.createStub(rpcProxy, stubInterface, callTimeout);
+    }
+
+    public RpcProxy getRpcProxy() {
+        return rpcProxy;
+    }
+}
@@ -0,0 +1,229 @@
+package rpc;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Encodes the parameters map of a call as delta to the previous call of the same function on the connection.
+ *
+ * Unchanged entries are omitted, entries removed since the previous call are listed in "$removed", and numeric
+ * arrays with few changed elements are sent as {"$delta": {"index": [...], "value": [...]}}. The session parameters
+ * registered when the session was opened are part of every call, unless the call overrides them.
+ *
+ * The server reconstructs the full parameters, see session.py. The server applies a delta when it reads the
+ * request, thus the parameters of a call are remembered by {@link #commit()} once its request has been written.
+ */
+class DeltaEncoder {
+
+	/** Key of the list of removed entries. */
+	static final String REMOVED = "$removed";
+	/** Key of an array delta. */
+	static final String DELTA = "$delta";
+
+	/** Session parameters registered on the server. */
+	private final Map<String, Object> sessionParameters;
+	/** Snapshot of the parameters of the previous call per function. */
+	private final Map<String, Map<String, Object>> previous = new HashMap<String, Map<String, Object>>();
+	/** Function of the encoded call not yet committed, null if none. */
+	private String pendingFunction;
+	/** Snapshot of the parameters of the encoded call not yet committed. */
+	private Map<String, Object> pendingParameters;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sessionParameters Session parameters registered on the server
+	 */
+	DeltaEncoder(Map<String, Object> sessionParameters) {
+		this.sessionParameters = snapshot(sessionParameters);
+	}
+
+	/**
+	 * Encodes the parameters as delta to the previous call of the function. The parameters become the base of
+	 * the next delta with {@link #commit()}.
+	 *
+	 * @param rpcFunction name of the RPC function
+	 * @param parameters the full parameters
+	 * @return the delta
+	 */
+	JSONObject encode(String rpcFunction, Map<String, Object> parameters) {
+		Map<String, Object> last = previous.get(rpcFunction);
+		if (last == null) {
+			last = sessionParameters;
+		}
+		// The session parameters are part of every call, unless overridden by the call
+		Map<String, Object> current = new HashMap<String, Object>(sessionParameters);
+		current.putAll(snapshot(parameters));
+		JSONObject delta = new JSONObject();
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			String key = entry.getKey();
+			Object value = entry.getValue();
+			if (!last.containsKey(key)) {
+				delta.put(key, value);
+			} else if (!deepEquals(last.get(key), value)) {
+				delta.put(key, arrayDelta(last.get(key), value));
+			}
+		}
+		List<String> removed = new ArrayList<String>();
+		for (String key : last.keySet()) {
+			if (!current.containsKey(key)) {
+				removed.add(key);
+			} else if (!parameters.containsKey(key) && !deepEquals(last.get(key), current.get(key))) {
+				// Overridden session parameter not passed anymore
+				delta.put(key, current.get(key));
+			}
+		}
+		if (!removed.isEmpty()) {
+			delta.put(REMOVED, removed);
+		}
+		pendingFunction = rpcFunction;
+		pendingParameters = current;
+		return delta;
+	}
+
+	/**
+	 * Remembers the parameters of the last encoded call for the next call of the function, once its request has
+	 * been written. Does nothing if there is no encoded call.
+	 */
+	void commit() {
+		if (pendingFunction != null) {
+			previous.put(pendingFunction, pendingParameters);
+			discard();
+		}
+	}
+
+	/**
+	 * Forgets the last encoded call, if not committed, since its request has not been written.
+	 */
+	void discard() {
+		pendingFunction = null;
+		pendingParameters = null;
+	}
+
+	/**
+	 * Returns the changed elements of a numeric array if they are less than half of the array, the value otherwise.
+	 */
+	private static Object arrayDelta(Object last, Object value) {
+		if (!(value instanceof float[] || value instanceof double[] || value instanceof int[])
+				|| last == null || last.getClass() != value.getClass() || Array.getLength(last) != Array.getLength(value)) {
+			return value;
+		}
+		int length = Array.getLength(value);
+		JSONArray index = new JSONArray();
+		JSONArray changed = new JSONArray();
+		for (int i = 0; i < length && 2 * index.size() < length; i++) {
+			if (value instanceof float[] ? Float.compare(((float[]) last)[i], ((float[]) value)[i]) != 0
+					: value instanceof double[] ? Double.compare(((double[]) last)[i], ((double[]) value)[i]) != 0
+					: ((int[]) last)[i] != ((int[]) value)[i]) {
+				index.add(i);
+				changed.add(Array.get(value, i));
+			}
+		}
+		if (2 * index.size() >= length) {
+			return value;
+		}
+		JSONObject elements = new JSONObject();
+		elements.put("index", index);
+		elements.put("value", changed);
+		JSONObject delta = new JSONObject();
+		delta.put(DELTA, elements);
+		return delta;
+	}
+
+	private static boolean deepEquals(Object a, Object b) {
+		if (a instanceof Tensor && b instanceof Tensor) {
+			Tensor ta = (Tensor) a;
+			Tensor tb = (Tensor) b;
+			return ta.getDtype().equals(tb.getDtype()) && Arrays.equals(ta.getShape(), tb.getShape())
+					&& ta.getScale() == tb.getScale() && ta.getData().equals(tb.getData());
+		} else if (a instanceof SparseTensor && b instanceof SparseTensor) {
+			SparseTensor sa = (SparseTensor) a;
+			SparseTensor sb = (SparseTensor) b;
+			return Arrays.equals(sa.getShape(), sb.getShape()) && deepEquals(sa.getIndptr(), sb.getIndptr())
+					&& deepEquals(sa.getIndices(), sb.getIndices()) && deepEquals(sa.getData(), sb.getData());
+		} else if (a instanceof List && b instanceof List) {
+			List<?> la = (List<?>) a;
+			List<?> lb = (List<?>) b;
+			if (la.size() != lb.size()) {
+				return false;
+			}
+			for (int i = 0; i < la.size(); i++) {
+				if (!deepEquals(la.get(i), lb.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		} else if (a instanceof Map && b instanceof Map) {
+			Map<?, ?> ma = (Map<?, ?>) a;
+			Map<?, ?> mb = (Map<?, ?>) b;
+			if (!ma.keySet().equals(mb.keySet())) {
+				return false;
+			}
+			for (Map.Entry<?, ?> entry : ma.entrySet()) {
+				if (!deepEquals(entry.getValue(), mb.get(entry.getKey()))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return Arrays.deepEquals(new Object[] { a }, new Object[] { b });
+	}
+
+	/**
+	 * Copies the parameters and their arrays, lists and maps, since callers may modify them in place between calls.
+	 */
+	private static Map<String, Object> snapshot(Map<String, Object> parameters) {
+		Map<String, Object> copy = new HashMap<String, Object>();
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			copy.put(entry.getKey(), copy(entry.getValue()));
+		}
+		return copy;
+	}
+
+	private static Object copy(Object value) {
+		if (value instanceof List) {
+			List<Object> list = new ArrayList<Object>();
+			for (Object element : (List<?>) value) {
+				list.add(copy(element));
+			}
+			return list;
+		} else if (value instanceof Map) {
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				map.put(entry.getKey(), copy(entry.getValue()));
+			}
+			return map;
+		} else if (value instanceof Object[]) {
+			Object[] array = ((Object[]) value).clone();
+			for (int i = 0; i < array.length; i++) {
+				array[i] = copy(array[i]);
+			}
+			return array;
+		} else if (value != null && value.getClass().isArray()) {
+			int length = Array.getLength(value);
+			Object array = Array.newInstance(value.getClass().getComponentType(), length);
+			System.arraycopy(value, 0, array, 0, length);
+			return array;
+		} else if (value instanceof Tensor) {
+			Tensor tensor = (Tensor) value;
+			ByteBuffer data = ByteBuffer.allocate(tensor.getData().remaining()).order(tensor.getData().order());
+			data.put(tensor.getData()).flip();
+			return new Tensor(tensor.getDtype(), tensor.getShape(), data, tensor.getScale());
+		} else if (value instanceof SparseTensor) {
+			SparseTensor sparse = (SparseTensor) value;
+			int[] shape = sparse.getShape();
+			return new SparseTensor(shape[0], shape[1], (Tensor) copy(sparse.getIndptr()),
+					(Tensor) copy(sparse.getIndices()), (Tensor) copy(sparse.getData()));
+		}
+		return value;
+	}
+}
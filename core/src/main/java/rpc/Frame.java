@@ -0,0 +1,45 @@
+package rpc;
+
+import java.nio.ByteBuffer;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+/**
+ * A frame of the stream protocol as sent or received, with the raw bytes of its attachments, e.g. for recording
+ * it with {@link TrafficRecorder}.
+ */
+final class Frame {
+
+	/** No attachments. */
+	static final ByteBuffer[] NO_ATTACHMENTS = new ByteBuffer[0];
+
+	/** The JSON-RPC message without EOL. */
+	final String text;
+	/** Raw bytes of the attachments, from position to limit. */
+	final ByteBuffer[] attachments;
+	/** The parsed response with the tensors of its attachments, null for requests. */
+	final JSONRPC2Response response;
+
+	/**
+	 * Constructor of a request frame.
+	 *
+	 * @param text the JSON-RPC request
+	 * @param attachments raw bytes of the attachments
+	 */
+	Frame(String text, ByteBuffer[] attachments) {
+		this(text, attachments, null);
+	}
+
+	/**
+	 * Constructor of a response frame.
+	 *
+	 * @param text the JSON-RPC response
+	 * @param attachments raw bytes of the attachments
+	 * @param response the parsed response
+	 */
+	Frame(String text, ByteBuffer[] attachments, JSONRPC2Response response) {
+		this.text = text;
+		this.attachments = attachments;
+		this.response = response;
+	}
+}
@@ -0,0 +1,370 @@
+package rpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TCP connection transferring frames terminated by EOL (\n) encoded as UTF-8.
+ *
+ * Frames are encoded into and read from direct buffers of the shared {@link BufferPool}. A buffer is only held
+ * while a frame is in flight or unread bytes of a following frame are pending, such that idle connections hold
+ * no buffers at all.
+ *
+ * Writing is thread-safe, e.g. for cancel messages sent while another thread waits for a response.
+ * Reading must be done by one thread at a time.
+ */
+public class FrameChannel implements Closeable {
+
+	/** End of line terminating a frame. */
+	private static final byte EOL = '\n';
+	/** Time to poll for a response before waiting in the selector [ns], since the responses of the ping pong protocol are usually fast. */
+	private static final long SPIN_TIME = 100000;
+
+	/** The buffer pool. */
+	private final BufferPool pool;
+	/** Maximal time a write may stall until the connection is closed [ms], 0 means forever. */
+	private final int writeTimeout;
+	/** The socket channel in non-blocking mode. */
+	private final SocketChannel channel;
+	/** Selector waiting for the channel to become readable. */
+	private final Selector readSelector;
+	/** Selector waiting for the channel to become writable, guarded by writeLock. */
+	private final Selector writeSelector;
+	/** Encoder of the frames, guarded by writeLock. */
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	/** Decoder of the frames. */
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+	/** Lock for writing frames. */
+	private final Object writeLock = new Object();
+	/** Buffer in read mode holding the received bytes not yet returned as frame, null if there are none. */
+	private ByteBuffer readBuffer;
+
+	/**
+	 * Opens the connection.
+	 *
+	 * @param host host name of the server
+	 * @param port port of the server
+	 * @param connectionTimeout Connection timeout [ms] 0 may mean wait forever.
+	 * @param pool the buffer pool
+	 * @throws IOException for IO problems
+	 */
+	public FrameChannel(String host, int port, int connectionTimeout, BufferPool pool) throws IOException {
+		this(host, port, connectionTimeout, 0, pool);
+	}
+
+	/**
+	 * Opens the connection.
+	 *
+	 * @param host host name of the server
+	 * @param port port of the server
+	 * @param connectionTimeout Connection timeout [ms] 0 may mean wait forever.
+	 * @param writeTimeout Maximal time a write may make no progress, e.g. since the server does not read, until
+	 *            the connection is closed [ms] 0 means wait forever.
+	 * @param pool the buffer pool
+	 * @throws IOException for IO problems
+	 */
+	public FrameChannel(String host, int port, int connectionTimeout, int writeTimeout, BufferPool pool) throws IOException {
+		this.pool = pool;
+		this.writeTimeout = writeTimeout;
+		channel = SocketChannel.open();
+		try {
+			channel.socket().setPerformancePreferences(0, 2, 1);
+			channel.socket().setTcpNoDelay(true); // Not actually useful here, since our protocol is a ping pong
+			channel.socket().connect(new InetSocketAddress(host, port), connectionTimeout);
+			channel.configureBlocking(false);
+			readSelector = Selector.open();
+			writeSelector = Selector.open();
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the frame followed by EOL and the raw bytes of the attachments, with one gathering write.
+	 *
+	 * @param frame the frame, must not contain EOL
+	 * @param attachments raw bytes of the attachments, from position to limit
+	 * @throws IOException for IO problems
+	 */
+	public void writeFrame(CharSequence frame, ByteBuffer... attachments) throws IOException {
+		synchronized (writeLock) {
+			ByteBuffer buffer = pool.acquire(utf8Length(frame) + 1);
+			try {
+				encode(frame, buffer);
+				buffer.flip();
+				ByteBuffer[] buffers = new ByteBuffer[attachments.length + 1];
+				buffers[0] = buffer;
+				for (int i = 0; i < attachments.length; i++) {
+					buffers[i + 1] = attachments[i].duplicate();
+				}
+				gather(buffers);
+			} finally {
+				pool.release(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Writes several frames, each followed by EOL and its attachments, with one gathering write.
+	 * Used to coalesce the requests of concurrent callers into one system call and few TCP segments.
+	 *
+	 * @param frames the frames, must not contain EOL
+	 * @param attachments raw bytes of the attachments of each frame, from position to limit
+	 * @throws IOException for IO problems
+	 */
+	public void writeFrames(List<? extends CharSequence> frames, List<ByteBuffer[]> attachments) throws IOException {
+		synchronized (writeLock) {
+			long capacity = 0;
+			for (CharSequence frame : frames) {
+				capacity += utf8Length(frame) + 1;
+			}
+			ByteBuffer buffer = pool.acquire((int) Math.min(Integer.MAX_VALUE, capacity));
+			try {
+				List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(2 * frames.size());
+				int start = 0;
+				for (int i = 0; i < frames.size(); i++) {
+					encode(frames.get(i), buffer);
+					ByteBuffer[] frameAttachments = attachments.get(i);
+					if (frameAttachments.length > 0 || i == frames.size() - 1) {
+						// Consecutive frames without attachments are written from one slice of the buffer
+						ByteBuffer encoded = buffer.duplicate();
+						encoded.limit(buffer.position()).position(start);
+						buffers.add(encoded);
+						start = buffer.position();
+					}
+					for (ByteBuffer attachment : frameAttachments) {
+						buffers.add(attachment.duplicate());
+					}
+				}
+				gather(buffers.toArray(new ByteBuffer[buffers.size()]));
+			} finally {
+				pool.release(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Returns the length of the string encoded as UTF-8, such that buffers are sized by the actual length instead
+	 * of the worst case of 3 bytes per char. Unpaired surrogates count as one byte, e.g. replaced by '?'.
+	 *
+	 * @param string the string
+	 * @return the length [bytes]
+	 */
+	static int utf8Length(CharSequence string) {
+		int length = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+					length += 4;
+					i++;
+				} else {
+					length++;
+				}
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Encodes the frame followed by EOL into the buffer, guarded by writeLock.
+	 */
+	private void encode(CharSequence frame, ByteBuffer buffer) throws IOException {
+		encoder.reset();
+		CoderResult result = encoder.encode(CharBuffer.wrap(frame), buffer, true);
+		if (!result.isUnderflow()) {
+			// Malformed input, or an overflow of the buffer sized by utf8Length()
+			result.throwException();
+		}
+		encoder.flush(buffer);
+		buffer.put(EOL);
+	}
+
+	/**
+	 * Writes the buffers from position to limit, guarded by writeLock. If the write makes no progress within the
+	 * write timeout, the connection is closed, since the peer would read the partially written frame as the start
+	 * of the next one.
+	 */
+	private void gather(ByteBuffer[] buffers) throws IOException {
+		long remaining = 0;
+		for (ByteBuffer buffer : buffers) {
+			remaining += buffer.remaining();
+		}
+		long stalled = 0;
+		while (remaining > 0) {
+			long written = channel.write(buffers);
+			if (written > 0) {
+				stalled = 0;
+			} else if (stalled == 0) {
+				stalled = System.nanoTime();
+			} else if (writeTimeout > 0 && (System.nanoTime() - stalled) / 1000000 >= writeTimeout) {
+				// Closing the socket fails a reader waiting on the connection as well
+				channel.close();
+				throw new SocketTimeoutException("Write stalled for " + writeTimeout + "ms, connection closed");
+			}
+			if (written == 0) {
+				await(writeSelector, SelectionKey.OP_WRITE,
+						writeTimeout > 0 ? Math.max(1, writeTimeout - (System.nanoTime() - stalled) / 1000000) : 0);
+			}
+			remaining -= written;
+		}
+	}
+
+	/**
+	 * Reads raw bytes following a frame, e.g. an attachment, until the buffer is full.
+	 *
+	 * @param dst the buffer to fill from position to limit
+	 * @param timeout Read timeout [ms] 0 may mean wait forever.
+	 * @throws SocketTimeoutException if the bytes have not been received within the timeout
+	 * @throws IOException for IO problems or if the connection has been closed
+	 */
+	public void readFully(ByteBuffer dst, int timeout) throws IOException {
+		if (readBuffer != null) {
+			int n = Math.min(readBuffer.remaining(), dst.remaining());
+			ByteBuffer pending = readBuffer.duplicate();
+			pending.limit(pending.position() + n);
+			dst.put(pending);
+			readBuffer.position(readBuffer.position() + n);
+			if (!readBuffer.hasRemaining()) {
+				pool.release(readBuffer);
+				readBuffer = null;
+			}
+		}
+		long start = System.nanoTime();
+		while (dst.hasRemaining()) {
+			int read = channel.read(dst);
+			if (read < 0) {
+				throw new IOException("Connection closed while reading attachment");
+			} else if (read == 0) {
+				long waited = (System.nanoTime() - start) / 1000000;
+				if (timeout > 0 && waited >= timeout) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				await(readSelector, SelectionKey.OP_READ, timeout > 0 ? timeout - waited : 0);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next frame.
+	 *
+	 * @param timeout Read timeout [ms] 0 may mean wait forever.
+	 * @return the frame without EOL, or null if the connection has been closed by the server
+	 * @throws SocketTimeoutException if no frame has been received within the timeout
+	 * @throws IOException for IO problems
+	 */
+	public String readFrame(int timeout) throws IOException {
+		long start = System.nanoTime();
+		int scanned = 0;
+		while (true) {
+			if (readBuffer != null) {
+				for (int i = readBuffer.position() + scanned; i < readBuffer.limit(); i++) {
+					if (readBuffer.get(i) == EOL) {
+						return takeFrame(i);
+					}
+				}
+				scanned = readBuffer.remaining();
+			}
+			if (!receive(start, timeout)) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the frame up to the EOL at index end and releases the read buffer if no bytes are left.
+	 */
+	private String takeFrame(int end) throws CharacterCodingException {
+		int limit = readBuffer.limit();
+		readBuffer.limit(end);
+		String frame = decoder.decode(readBuffer).toString();
+		readBuffer.limit(limit);
+		readBuffer.position(end + 1);
+		if (!readBuffer.hasRemaining()) {
+			pool.release(readBuffer);
+			readBuffer = null;
+		}
+		return frame;
+	}
+
+	/**
+	 * Receives more bytes into the read buffer, growing it if full.
+	 *
+	 * @return false if the connection has been closed
+	 */
+	private boolean receive(long start, int timeout) throws IOException {
+		if (readBuffer == null) {
+			readBuffer = pool.acquire(0);
+			readBuffer.flip();
+		}
+		if (readBuffer.limit() == readBuffer.capacity() && readBuffer.position() > 0) {
+			readBuffer.compact().flip();
+		} else if (readBuffer.limit() == readBuffer.capacity()) {
+			ByteBuffer larger = pool.acquire(readBuffer.capacity() * 2);
+			larger.put(readBuffer).flip();
+			pool.release(readBuffer);
+			readBuffer = larger;
+		}
+		int position = readBuffer.position();
+		readBuffer.position(readBuffer.limit());
+		readBuffer.limit(readBuffer.capacity());
+		try {
+			int read;
+			while ((read = channel.read(readBuffer)) == 0) {
+				long waited = (System.nanoTime() - start) / 1000000;
+				if (timeout > 0 && waited >= timeout) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				if (System.nanoTime() - start > SPIN_TIME) {
+					await(readSelector, SelectionKey.OP_READ, timeout > 0 ? timeout - waited : 0);
+				}
+			}
+			return read > 0;
+		} finally {
+			readBuffer.flip();
+			readBuffer.position(position);
+		}
+	}
+
+	/**
+	 * Waits until the channel is ready for the operation or the timeout [ms] has passed, 0 means forever.
+	 */
+	private void await(Selector selector, int operation, long timeout) throws IOException {
+		channel.register(selector, operation);
+		selector.select(timeout);
+		selector.selectedKeys().clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		pool.release(readBuffer);
+		readBuffer = null;
+		try {
+			readSelector.close();
+			writeSelector.close();
+		} finally {
+			channel.close();
+		}
+	}
+}
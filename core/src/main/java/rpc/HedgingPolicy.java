@@ -0,0 +1,140 @@
+package rpc;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Policy for hedged requests: if a call of an idempotent function has not completed after a delay, a duplicate
+ * is sent to another replica. The first response wins and the other request is cancelled.
+ *
+ * The hedge delay is a percentile of the recently observed latencies, such that only the slowest calls are
+ * hedged. The budget caps the extra load as ratio of hedged calls to all calls.
+ *
+ * @see Controller#setHedgingPolicy(HedgingPolicy)
+ */
+public class HedgingPolicy {
+
+	/** Number of latencies kept for the percentile. */
+	private static final int WINDOW_SIZE = 1024;
+
+	/** Percentile of the latencies used as hedge delay, e.g. 95. */
+	private final double delayPercentile;
+	/** Lower bound of the hedge delay [ms]. */
+	private final long minDelay;
+	/** Maximal ratio of hedged calls to all calls, e.g. 0.05. */
+	private final double budget;
+	/** Names of the functions which may be called twice. */
+	private final Set<String> idempotentFunctions;
+
+	/** Ring buffer of recent latencies [ns]. */
+	private final long[] latencies = new long[WINDOW_SIZE];
+	/** Number of latencies recorded so far. */
+	private long latencyCount;
+
+	/** Number of calls subject to hedging. */
+	private final AtomicLong calls = new AtomicLong();
+	/** Number of hedged calls. */
+	private final AtomicLong hedges = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param delayPercentile Percentile of the recent latencies after which a call is hedged, e.g. 95
+	 * @param minDelay Lower bound of the hedge delay [ms], used as well until latencies are known
+	 * @param budget Maximal ratio of hedged calls to all calls, e.g. 0.05 for at most 5% extra load
+	 * @param idempotentFunctions Names of the RPC functions which may be hedged, e.g. keras_test_numpy
+	 */
+	public HedgingPolicy(double delayPercentile, long minDelay, double budget, String... idempotentFunctions) {
+		if (delayPercentile <= 0 || delayPercentile > 100) {
+			throw new IllegalArgumentException("Percentile must be in (0, 100]: " + delayPercentile);
+		}
+		this.delayPercentile = delayPercentile;
+		this.minDelay = minDelay;
+		this.budget = budget;
+		this.idempotentFunctions = new HashSet<String>(Arrays.asList(idempotentFunctions));
+	}
+
+	/**
+	 * Returns whether calls of the function may be hedged.
+	 *
+	 * @param rpcFunction name of the RPC function
+	 * @return true if the function is idempotent
+	 */
+	public boolean isIdempotent(String rpcFunction) {
+		return idempotentFunctions.contains(rpcFunction);
+	}
+
+	/**
+	 * Returns the delay after which a pending call is hedged.
+	 *
+	 * @return delay [ms]
+	 */
+	public long getHedgeDelay() {
+		long[] sorted;
+		synchronized (latencies) {
+			int n = (int) Math.min(latencyCount, WINDOW_SIZE);
+			if (n == 0) {
+				return minDelay;
+			}
+			sorted = Arrays.copyOf(latencies, n);
+		}
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(delayPercentile / 100 * sorted.length) - 1;
+		return Math.max(minDelay, sorted[Math.max(0, index)] / 1000000);
+	}
+
+	/**
+	 * Records the latency of a completed call.
+	 *
+	 * @param latency latency [ns]
+	 */
+	public void recordLatency(long latency) {
+		synchronized (latencies) {
+			latencies[(int) (latencyCount++ % WINDOW_SIZE)] = latency;
+		}
+	}
+
+	/**
+	 * Records a call subject to hedging.
+	 */
+	public void recordCall() {
+		calls.incrementAndGet();
+	}
+
+	/**
+	 * Takes a hedge from the budget.
+	 *
+	 * @return true if the call may be hedged, false if the budget is exhausted
+	 */
+	public boolean tryAcquireHedge() {
+		while (true) {
+			long current = hedges.get();
+			if (current + 1 > budget * calls.get()) {
+				return false;
+			}
+			if (hedges.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of calls subject to hedging.
+	 *
+	 * @return number of calls
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * Returns the number of hedged calls.
+	 *
+	 * @return number of hedges
+	 */
+	public long getHedges() {
+		return hedges.get();
+	}
+}
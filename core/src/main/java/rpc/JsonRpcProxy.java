@@ -47,9 +47,32 @@ public class JsonRpcProxy extends AbstractJsonRpcProxy {
 		super(rpcServerURL, rpcFunction, connectionTimeout, readTimeout, verboseLevel);
 	}
 
+	/**
+	 * Sends the request over a new HTTP connection.
+	 * 
+	 * The deadline bounds the read timeout of this call: the call is sent by a session of its own with that
+	 * timeout, since the options of the shared session apply to all concurrent calls. Cancellation is not
+	 * supported, since each request uses its own HTTP connection. The server drops requests whose deadline has
+	 * passed.
+	 * 
+	 * Traces account encoding, sending and decoding to the response time, since the session does them at once.
+	 */
 	@Override
-	public JSONRPC2Response invoke(JSONRPC2Request request) throws Exception {
-		return getProxy().send(request);
+	public JSONRPC2Response invoke(JSONRPC2Request request, long deadline) throws Exception {
+		JSONRPC2Session session = getProxy();
+		int timeout = remainingTimeout(deadline);
+		if (timeout != readTimeout) {
+			session = createSession(timeout);
+		}
+		String recordedRequest = recordedRequest(request);
+		long timestamp = System.currentTimeMillis();
+		long start = System.nanoTime();
+		RequestTrace trace = startTrace(request);
+		applyDeadline(request, deadline);
+		JSONRPC2Response response = session.send(request);
+		finishTrace(trace, response);
+		record(recordedRequest, response, timestamp, start);
+		return response;
 	}
 
 	@Override
@@ -72,18 +95,29 @@ public class JsonRpcProxy extends AbstractJsonRpcProxy {
 			if (verboseLevel >= VERBOSE_LEVEL_DEBUG) {
 				RpcProxy.sLog.fine("Create rpc.JsonRpcProxy");
 			}
-			proxy = new JSONRPC2Session(rpcServerURL);
-			JSONRPC2SessionOptions sessionOptions = new JSONRPC2SessionOptions();
-			sessionOptions.ignoreVersion(true);
-			sessionOptions.setReadTimeout(readTimeout);
-			sessionOptions.setConnectTimeout(connectionTimeout);
-			sessionOptions.enableCompression(false);
-			sessionOptions.parseNonStdAttributes(false);
-			proxy.setOptions(sessionOptions);
+			proxy = createSession(readTimeout);
 		}
 		return proxy;
 	}
 
+	/**
+	 * Creates a session, which only holds the URL and options, the connections are opened per request.
+	 * 
+	 * @param timeout Read timeout [ms] 0 may mean wait forever.
+	 * @return the session
+	 */
+	private JSONRPC2Session createSession(int timeout) {
+		JSONRPC2Session session = new JSONRPC2Session(rpcServerURL);
+		JSONRPC2SessionOptions sessionOptions = new JSONRPC2SessionOptions();
+		sessionOptions.ignoreVersion(true);
+		sessionOptions.setReadTimeout(timeout);
+		sessionOptions.setConnectTimeout(connectionTimeout);
+		sessionOptions.enableCompression(false);
+		sessionOptions.parseNonStdAttributes(true); // For the "timing" attribute of traced requests
+		session.setOptions(sessionOptions);
+		return session;
+	}
+
 	/**
 	 * Test call.
 	 * 
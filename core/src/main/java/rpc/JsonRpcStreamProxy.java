@@ -0,0 +1,644 @@
+package rpc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+//import org.apache.commons.lang.exception.ExceptionUtils;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Notification;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParseException;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+/**
+ * Proxy class for JSON-RPC function calls (http://json-rpc.org) using a TCP socket streaming the data.
+ * 
+ * One TCP connection per simulation is used. This is a optimized, high performance implementation.
+ * 
+ * This implementation is not JSON-RPC 2.0 standard compatible as the communication is not over HTTP.
+ * 
+ * Simple custom RPC streaming protocol sending JSON-RPC 2.0 string lines encoded as UTF-8:
+ * <ol>
+ * <li>Open TCP socket communication connection
+ * <li>Send JSON-RPC 2.0 request terminated by EOL.
+ * <li>Read JSON-RPC 2.0 response terminated by EOL.
+ * <li>Repeat 2 until simulation has ended.
+ * <li>Send empty line terminated by EOL to terminate the connection.
+ * </ol>
+ * 
+ * EOL = End of line (i.e. \n in Python/Java or Unicode \u000a)
+ * 
+ * Numpy arrays are transferred as binary attachments following the EOL, see {@link Tensor}.
+ * 
+ * Parameters of time-stepped calls may be sent as delta to the previous call, see {@link #setupRpc(Map)}.
+ * 
+ * Requests may carry a non standard "deadline" attribute [ms since the epoch]. A queued or running request
+ * is cancelled with the notification <code>{"jsonrpc":"2.0","method":"cancel","params":[id]}</code>.
+ * 
+ * Sampled requests carry the non standard attribute "timing", see {@link #setTraceListener(RequestTraceListener, double)}.
+ * 
+ * With {@link #setSharedConnection(boolean)} concurrent callers share the connection: their requests are
+ * coalesced into gathering writes and the responses are matched by id, see {@link SharedConnection}.
+ * Requests of higher {@link Priority} are written first.
+ * 
+ * This client proxy uses parts of http://software.dzhuvinov.com/json-rpc-2.0-base.html.
+ * 
+ * The {@link JsonRpcProxy} is similar, but creates for each request a new HTTP (TCP) connection.
+ * Therefore, {@link JsonRpcStreamProxy} is much slower, but JSON-RPC standard conform.
+ * 
+ * @author rkurmann
+ * @since Polysun 9.2
+ * 
+ * @see JsonRpcProxy
+ *
+ */
+public class JsonRpcStreamProxy extends AbstractJsonRpcProxy {
+
+	/** Scheme of the stream server URLs, e.g. jsonrpc2://localhost:2102 */
+	public static final String SCHEME = "jsonrpc2";
+
+	/**
+	 * Handler of the {@link #SCHEME} URLs. The URLs only carry host and port, the connection is a {@link FrameChannel}.
+	 * Passed per URL, since a global URLStreamHandlerFactory can be set only once per JVM and may clash with the
+	 * application or its container.
+	 */
+	private static final URLStreamHandler STREAM_HANDLER = new URLStreamHandler() {
+		@Override
+		protected URLConnection openConnection(URL url) throws IOException {
+			throw new IOException("Connect to " + url + " with " + JsonRpcStreamProxy.class.getSimpleName());
+		}
+	};
+
+	/** TCP connection for streaming the function JSON-RPC requests and JSON-RPC responses. */
+	private volatile FrameChannel channel;
+	/** Parameters registered for the session of the connection, null if no session is used. */
+	private Map<String, Object> sessionParameters;
+	/** Encoder of the parameters as delta to the previous call, null if no session is open. */
+	private DeltaEncoder deltaEncoder;
+	/** Connection the session has been opened on. */
+	private FrameChannel sessionChannel;
+	/** Request of the current session call with the full parameters, sent as delta by invoke(). */
+	private JSONRPC2Request sessionRequest;
+	/** Whether concurrent callers share the connection. */
+	private volatile boolean sharedConnection;
+	/** Writer and reader of the shared connection, null if not connected or not shared. */
+	private SharedConnection shared;
+	/** Lock for opening the shared connection. */
+	private final Object connectLock = new Object();
+	/** Sequence of the ids replacing ids in use by concurrent calls on the shared connection. */
+	private final AtomicLong nextConnectionId = new AtomicLong();
+	/** Ids of the callers by the replacing id of their calls in flight on the shared connection. */
+	private final ConcurrentMap<Object, Object> replacedIds = new ConcurrentHashMap<Object, Object>();
+	/** Precision of the float arrays of the results, e.g. {@link Tensor#FLOAT16}, null for full precision. */
+	private volatile String resultPrecision;
+		
+	/**
+	 * Constructor.
+	 * 
+	 * @param rpcServerURL URL of the RPC server for the function calls, e.g. http://localhost:2102/control
+	 * @param rpcFunction Name of the RPC function, e.g. controlFlowrate
+	 * @param connectionTimeout Connection timeout [ms] 0 may mean wait forever.
+	 * @param readTimeout Read timeout [ms] 0 may mean wait forever.
+	 * @param verboseLevel Level of verbosity
+	 */
+	protected JsonRpcStreamProxy(URL rpcServerURL, String rpcFunction, int connectionTimeout, int readTimeout, int verboseLevel) {
+		super(rpcServerURL, rpcFunction, connectionTimeout, readTimeout, verboseLevel);
+	}
+
+	/**
+	 * Parses the URL of a server, {@link #SCHEME} URLs of the stream server or http URLs.
+	 *
+	 * @param spec the URL, e.g. jsonrpc2://localhost:2102
+	 * @return the URL
+	 * @throws MalformedURLException if the URL is invalid
+	 */
+	public static URL parseURL(String spec) throws MalformedURLException {
+		return spec.startsWith(SCHEME + ":") ? new URL(null, spec, STREAM_HANDLER) : new URL(spec);
+	}
+
+	/**
+	 * Lets concurrent callers share the connection instead of calling one after the other. Requests are
+	 * enqueued without locking and written by one writer thread, which coalesces all pending requests into one
+	 * gathering write. A reader thread matches the responses by id, thus the server may complete requests out
+	 * of order, e.g. with --pool. Must be set before connecting.
+	 * 
+	 * Calls of a session (see {@link #setupRpc(Map)}) remain sequential, since each delta refers to the previous call.
+	 * 
+	 * @param sharedConnection true to share the connection
+	 */
+	public void setSharedConnection(boolean sharedConnection) {
+		this.sharedConnection = sharedConnection;
+	}
+
+	/**
+	 * Requests the float arrays of the results with reduced precision, sent as non standard attribute
+	 * "result_precision" with requests having attachments. The arrays are returned as {@link Tensor} of that dtype.
+	 * 
+	 * @param resultPrecision {@link Tensor#FLOAT16}, {@link Tensor#BFLOAT16}, {@link Tensor#INT8} (quantized)
+	 *            or null for full precision
+	 */
+	public void setResultPrecision(String resultPrecision) {
+		this.resultPrecision = resultPrecision;
+	}
+
+	@Override
+	public void disconnectProxy() {
+		synchronized (connectLock) {
+			if (shared != null) {
+				shared.close();
+				shared = null;
+			}
+		}
+		if (channel != null) {
+			if (RpcProxy.sLog.isLoggable(Level.INFO))
+				RpcProxy.sLog.info("Disconnect proxy");
+			try {
+				channel.writeFrame(""); // Send empty line as signal to close connection
+				channel.close();
+			} catch (IOException e) {
+//				sLog.warning(ExceptionUtils.getFullStackTrace(e));
+				RpcProxy.sLog.warning(e.getMessage());
+			}
+			channel = null;
+			sessionChannel = null;
+			rpcServerURL = null;
+		}
+	}
+
+	/**
+	 * Sends the request and waits for its response.
+	 * 
+	 * If the deadline passes before the response arrives, a cancel message is sent to the server and a
+	 * {@link SocketTimeoutException} is thrown. Late responses of such requests are skipped by later calls.
+	 */
+	@Override
+	public JSONRPC2Response invoke(JSONRPC2Request request, long deadline) throws JSONRPC2ParseException, IOException {
+		TrafficRecorder recorder = this.recorder;
+		Frame recordedRequest = null;
+		if (request == sessionRequest) {
+			if (recorder != null) {
+				recordedRequest = recordedSessionRequest(request);
+			}
+			encodeDelta(request);
+		}
+		long timestamp = System.currentTimeMillis();
+		long start = System.nanoTime();
+		RequestTrace trace = startTrace(request);
+		applyDeadline(request, deadline);
+		List<Tensor> tensors = extractTensors(request);
+		if (!tensors.isEmpty() || request.getNonStdAttribute("attachments") != null) {
+			request.appendNonStdAttribute("attachments", Attachments.headers(tensors));
+			if (resultPrecision != null) {
+				request.appendNonStdAttribute("result_precision", resultPrecision);
+			}
+		}
+		String rawRequest = request.toString();
+		ByteBuffer[] attachments = Attachments.data(tensors);
+		if (trace != null) {
+			trace.markEncoded();
+		}
+		Frame received = exchange(rawRequest, attachments, request, request.getID(), deadline, trace);
+		if (recorder != null) {
+			// Recorded as sent, the tensors as raw bytes of the attachments
+			record(recorder, recordedRequest != null ? recordedRequest : new Frame(rawRequest, attachments), received,
+					timestamp, start);
+		}
+		return received.response;
+	}
+
+	/**
+	 * Returns the session call to record: with the full parameters and without the "session" attribute, such that
+	 * the log can be replayed on a connection without session.
+	 */
+	@SuppressWarnings("unchecked")
+	private Frame recordedSessionRequest(JSONRPC2Request request) {
+		Map<String, Object> parameters = new HashMap<String, Object>(sessionParameters);
+		parameters.putAll((Map<String, Object>) request.getPositionalParams().get(0));
+		JSONRPC2Request recorded = new JSONRPC2Request(request.getMethod(), Arrays.asList((Object) parameters),
+				request.getID());
+		if (request.getNonStdAttributes() != null) {
+			for (Map.Entry<String, Object> attribute : request.getNonStdAttributes().entrySet()) {
+				recorded.appendNonStdAttribute(attribute.getKey(), attribute.getValue());
+			}
+		}
+		List<Tensor> tensors = extractTensors(recorded);
+		if (!tensors.isEmpty()) {
+			recorded.appendNonStdAttribute("attachments", Attachments.headers(tensors));
+		}
+		return new Frame(recorded.toString(), Attachments.data(tensors));
+	}
+
+	/**
+	 * Appends the call to the recorder.
+	 */
+	private void record(TrafficRecorder recorder, Frame request, Frame response, long timestamp, long start) {
+		try {
+			recorder.record(timestamp, System.nanoTime() - start, request.text, request.attachments, response.text,
+					response.attachments);
+		} catch (IOException e) {
+			RpcProxy.sLog.warning("Recording failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Replaces the parameters of the session call by their delta to the previous call.
+	 */
+	@SuppressWarnings("unchecked")
+	private void encodeDelta(JSONRPC2Request request) {
+		Map<String, Object> parameters = (Map<String, Object>) request.getPositionalParams().get(0);
+		request.setPositionalParams(Arrays.asList((Object) deltaEncoder.encode(request.getMethod(), parameters)));
+		request.appendNonStdAttribute("session", true);
+	}
+
+	/**
+	 * Replaces the tensors in the parameters of the request by attachment placeholders.
+	 * 
+	 * @return the tensors to send as attachments
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Tensor> extractTensors(JSONRPC2Request request) {
+		List<Tensor> tensors = new ArrayList<Tensor>();
+		if (request.getPositionalParams() != null) {
+			request.setPositionalParams((List<Object>) Attachments.extract(request.getPositionalParams(), tensors));
+		} else if (request.getNamedParams() != null) {
+			request.setNamedParams((Map<String, Object>) Attachments.extract(request.getNamedParams(), tensors));
+		}
+		return tensors;
+	}
+
+	/**
+	 * Sends the pre-encoded request. A sampled request gets the "timing" attribute spliced in.
+	 */
+	@Override
+	public JSONRPC2Response invoke(String rawRequest, Object requestId, long deadline) throws JSONRPC2ParseException, IOException {
+		TrafficRecorder recorder = this.recorder;
+		String recordedRequest = rawRequest;
+		long timestamp = System.currentTimeMillis();
+		long start = System.nanoTime();
+		RequestTrace trace = null;
+		if (isSampled() && rawRequest.startsWith("{")) {
+			trace = new RequestTrace(null, requestId);
+			rawRequest = "{\"timing\":true," + rawRequest.substring(1);
+			trace.markEncoded();
+		}
+		Frame received = exchange(rawRequest, Frame.NO_ATTACHMENTS, null, requestId, deadline, trace);
+		if (recorder != null) {
+			record(recorder, new Frame(recordedRequest, Frame.NO_ATTACHMENTS), received, timestamp, start);
+		}
+		return received.response;
+	}
+
+	/**
+	 * Sends the request with its attachments and waits for its response.
+	 * 
+	 * @return the response frame
+	 * @param request the request if not pre-encoded, re-encoded if its id is in use on the shared connection
+	 */
+	private Frame exchange(String rawRequest, ByteBuffer[] attachments, JSONRPC2Request request, Object requestId,
+			long deadline, RequestTrace trace) throws JSONRPC2ParseException, IOException {
+		if (sharedConnection) {
+			return exchangeShared(rawRequest, attachments, request, requestId, deadline, trace);
+		}
+		return exchangeSequential(rawRequest, attachments, request, requestId, deadline, trace);
+	}
+
+	/**
+	 * Commits the delta of a session request once written, since the server applies it when reading the request.
+	 * 
+	 * @param request the request, null if pre-encoded
+	 */
+	private void commitDelta(JSONRPC2Request request) {
+		if (request != null && deltaEncoder != null && Boolean.TRUE.equals(request.getNonStdAttribute("session"))) {
+			deltaEncoder.commit();
+		}
+	}
+
+	/**
+	 * Enqueues the request on the shared connection and waits for its response.
+	 */
+	private Frame exchangeShared(String rawRequest, ByteBuffer[] attachments, JSONRPC2Request request,
+			Object requestId, long deadline, RequestTrace trace) throws JSONRPC2ParseException, IOException {
+		SharedConnection connection = getSharedConnection();
+		int timeout = remainingTimeout(deadline);
+		Object connectionId = requestId;
+		Priority priority = request != null ? Priority.fromAttribute(request.getNonStdAttribute("priority")) : Priority.NORMAL;
+		SharedConnection.Call call = new SharedConnection.Call(rawRequest, attachments, connectionId, priority, trace);
+		while (!connection.submit(call)) {
+			// The id is in use by a concurrent call, send the request with an id unique on the connection
+			if (request == null) {
+				request = JSONRPC2Request.parse(rawRequest, false, true, true);
+			}
+			connectionId = "#" + nextConnectionId.incrementAndGet();
+			request.setID(connectionId);
+			call = new SharedConnection.Call(request.toString(), attachments, connectionId, priority, trace);
+			// Registered before submitting, such that a concurrent cancel(requestId) finds the call
+			replacedIds.put(connectionId, String.valueOf(requestId));
+		}
+		Frame received;
+		try {
+			received = connection.await(call, timeout);
+		} catch (SocketTimeoutException e) {
+			if (deadline != NO_DEADLINE) {
+				sendCancel(connectionId);
+			}
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the response");
+		} finally {
+			if (call.isWritten()) {
+				commitDelta(request);
+			}
+			if (request != null) {
+				request.setID(requestId);
+			}
+			if (connectionId != requestId) {
+				replacedIds.remove(connectionId);
+			}
+		}
+		received.response.setID(requestId);
+		finishTrace(trace, received.response);
+		return received;
+	}
+
+	/**
+	 * Sends the request with its attachments and reads responses until the one with the request id.
+	 */
+	private synchronized Frame exchangeSequential(String rawRequest, ByteBuffer[] attachments,
+			JSONRPC2Request request, Object requestId, long deadline, RequestTrace trace) throws JSONRPC2ParseException, IOException {
+		FrameChannel channel = getProxy();
+		try {
+			channel.writeFrame(rawRequest, attachments);
+		} catch (IOException e) {
+			// A partially written request leaves the stream out of sync, and the server may have applied its delta
+			dropChannel();
+			throw e;
+		}
+		commitDelta(request);
+		if (trace != null) {
+			trace.markSent();
+		}
+		while (true) {
+			String rawResponse;
+			JSONRPC2Response response;
+			ByteBuffer[] responseAttachments;
+			try {
+				rawResponse = channel.readFrame(remainingTimeout(deadline));
+			} catch (SocketTimeoutException e) {
+				if (deadline != NO_DEADLINE) {
+					sendCancel(requestId);
+				}
+				throw e;
+			}
+			if (rawResponse == null) {
+				dropChannel();
+				throw new IOException("Connection closed by server");
+			}
+			if (trace != null) {
+				trace.markReceived();
+			}
+			boolean complete = false;
+			try {
+				response = JSONRPC2Response.parse(rawResponse, false, true, true);
+				responseAttachments = Attachments.read(channel, response, remainingTimeout(deadline));
+				complete = true;
+			} finally {
+				if (!complete) {
+					// Unread attachment bytes would be read as the next frame, the server cancels the calls of the
+					// closed connection
+					dropChannel();
+				}
+			}
+			if (requestId == null || String.valueOf(requestId).equals(String.valueOf(response.getID()))) {
+				finishTrace(trace, response);
+				return new Frame(rawResponse, responseAttachments, response);
+			}
+			// Response of an earlier request that has been given up, e.g. after its deadline
+			if (verboseLevel >= VERBOSE_LEVEL_DEBUG) {
+				RpcProxy.sLog.fine("Skip stale response: " + rawResponse);
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection after a failure leaving the stream out of sync, the next call reconnects and
+	 * reopens the session.
+	 */
+	private void dropChannel() {
+		FrameChannel channel = this.channel;
+		this.channel = null;
+		sessionChannel = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				RpcProxy.sLog.warning(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Sets up the proxy. If parameters are given, a session is opened on the connection: the parameters are
+	 * registered once on the server, and each later call sends only the entries and array elements which
+	 * changed since the previous call. The server reconstructs the full parameters.
+	 * 
+	 * @param parameters Session parameters constant for the whole session, or null
+	 */
+	@Override
+	public void setupRpc(Map<String, Object> parameters) throws Exception {
+		super.setupRpc(parameters);
+		if (parameters != null) {
+			sessionParameters = parameters;
+			openSession();
+		}
+	}
+
+	/**
+	 * Opens the session on the current connection.
+	 */
+	private synchronized void openSession() throws Exception {
+		JSONRPC2Response response = invoke(new JSONRPC2Request("session_open", Arrays.asList((Object) sessionParameters), "session_open"));
+		if (!response.indicatesSuccess()) {
+			throw new Exception(response.getError());
+		}
+		deltaEncoder = new DeltaEncoder(sessionParameters);
+		sessionChannel = channel;
+	}
+
+	@Override
+	public ControlFunctionResponse callRemoteFunction(Map<String, Object> parameters, int request_id, long deadline,
+			Priority priority) throws Exception {
+		if (sharedConnection && sessionParameters == null) {
+			return super.callRemoteFunction(parameters, request_id, deadline, priority);
+		}
+		// Encoding the delta and sending it must not be interleaved with other calls
+		synchronized (this) {
+			try {
+				return super.callRemoteFunction(parameters, request_id, deadline, priority);
+			} finally {
+				sessionRequest = null;
+				if (deltaEncoder != null) {
+					// The delta of a request not written is not the base of the next one
+					deltaEncoder.discard();
+				}
+			}
+		}
+	}
+
+	@Override
+	protected JSONRPC2Request createRequest(Map<String, Object> parameters, int request_id) throws Exception {
+		if (sessionParameters == null) {
+			return super.createRequest(parameters, request_id);
+		}
+		if (sessionChannel == null || sessionChannel != channel) {
+			// The session state of the server is lost with the connection
+			openSession();
+		}
+		// Recorded with the full parameters before invoke() encodes the delta
+		sessionRequest = super.createRequest(parameters, request_id);
+		return sessionRequest;
+	}
+
+	/**
+	 * Sends a cancel message for the request to the server. May be called from another thread than the one
+	 * waiting in {@link #invoke(JSONRPC2Request, long)}.
+	 * 
+	 * On the shared connection, a request whose id was in use by a concurrent call has been sent with a
+	 * replacing id, which is cancelled as well. Concurrent calls with the same id are thus cancelled together.
+	 */
+	@Override
+	public void cancel(Object requestId) throws IOException {
+		String key = String.valueOf(requestId);
+		for (Map.Entry<Object, Object> replaced : replacedIds.entrySet()) {
+			if (key.equals(replaced.getValue())) {
+				sendCancel(replaced.getKey());
+			}
+		}
+		sendCancel(requestId);
+	}
+
+	/**
+	 * Sends a cancel message for the id the request has on the connection.
+	 */
+	private void sendCancel(Object connectionId) throws IOException {
+		FrameChannel channel = this.channel;
+		if (channel != null) {
+			channel.writeFrame(new JSONRPC2Notification("cancel", Arrays.asList(connectionId)).toString());
+		}
+	}
+	
+	/**
+	 * Returns the shared connection, connecting if not connected or if the connection has failed.
+	 * 
+	 * @return the shared connection
+	 * @throws IOException for IO problems
+	 */
+	private SharedConnection getSharedConnection() throws IOException {
+		synchronized (connectLock) {
+			if (shared != null && !shared.isOpen()) {
+				shared.close();
+				shared = null;
+				channel.close();
+				channel = null;
+			}
+			if (shared == null) {
+				shared = new SharedConnection(getProxy(), readTimeout);
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * Returns a proxy to communicate with the JSON-RPC server.
+	 * 
+	 * @return the proxy
+	 * @throws IOException for IO problems
+	 * @throws UnknownHostException for host resolving problems
+	 */
+	protected FrameChannel getProxy() throws UnknownHostException, IOException {
+		if (channel == null) {
+			if (verboseLevel >= VERBOSE_LEVEL_DEBUG) {
+				RpcProxy.sLog.fine("Create JsonRpcStreamProxy");
+			}
+			
+			// Frames are read and written through direct buffers of the shared pool, no per connection heap buffers
+			channel = new FrameChannel(rpcServerURL.getHost(), rpcServerURL.getPort(), connectionTimeout, readTimeout,
+					BufferPool.SHARED);
+		}
+		return channel;
+	}
+
+	/**
+	 * Test call.
+	 * 
+	 * @param args Program arguments
+	 * 
+	 * @throws Exception
+	 *             For any problems
+	 */
+	public static void main(String... args) throws Exception {
+		System.out.println("Start");
+		URL serverURL = parseURL("jsonrpc2://localhost:2102");
+
+		int requestID = 0;
+		
+		JsonRpcStreamProxy proxy = new JsonRpcStreamProxy(serverURL, "keras_test_numpy", 15000, 15000, 3);
+
+		JSONRPC2Request request = new JSONRPC2Request("ping", requestID++);
+		JSONRPC2Response response = proxy.invoke(request);
+		if (response.indicatesSuccess()) {
+			System.out.println(response.getResult());
+		} else {
+			System.out.println(response.getError().getMessage());
+		}
+
+//		request = new JSONRPC2Request("ping", requestID++);
+//		response = proxy.invoke(request);
+		/*if (response.indicatesSuccess()) {
+			System.out.println(response.getResult());
+		} else {
+			System.out.println(response.getError().getMessage());
+		}*/
+		
+		request = new JSONRPC2Request("print", Arrays.asList(new Object[] { "WOW" }), requestID++);
+		response = proxy.invoke(request);
+		if (response.indicatesSuccess()) {
+			System.out.println(response.getResult());
+		} else {
+			System.out.println(response.getError().getMessage());
+		}
+
+		int num = 100000;
+		long start = System.nanoTime();
+		for (int i = 0; i < num; i++) {
+			response = proxy.invoke(new JSONRPC2Request("ping", requestID++));
+		}
+		long stop = System.nanoTime();
+		System.out.println("@ ping " + num + " times cost time: " + ((stop - start) / 10000 / num) / 100f + "ms");
+		if (response.indicatesSuccess()) {
+			System.out.println(response.getResult());
+		} else {
+			System.out.println(response.getError().getMessage());
+		}
+
+		System.out.println("End");
+//		System.exit(0);
+	}
+
+}
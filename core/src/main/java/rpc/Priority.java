@@ -0,0 +1,45 @@
+package rpc;
+
+import java.util.Locale;
+
+/**
+ * Priority class of a call, sent as non standard attribute "priority" of the request.
+ *
+ * Higher priorities are written first on a shared connection (see {@link SharedConnection}) and executed first
+ * by the stream server. Lower priorities still progress: every write and every few executions serve them as well.
+ *
+ * @see Controller#callRemoteFunction(java.util.Map, int, long, Priority)
+ */
+public enum Priority {
+
+	/** Latency-critical calls, e.g. control functions with hard latency targets. */
+	HIGH,
+	/** Default priority, not sent with the request. */
+	NORMAL,
+	/** Throughput-oriented calls, e.g. batch scoring. */
+	BULK;
+
+	/**
+	 * Returns the value of the "priority" attribute.
+	 *
+	 * @return e.g. "high"
+	 */
+	public String toAttribute() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the priority of a "priority" attribute.
+	 *
+	 * @param attribute the attribute value, may be null
+	 * @return the priority, {@link #NORMAL} if unknown or null
+	 */
+	public static Priority fromAttribute(Object attribute) {
+		for (Priority priority : values()) {
+			if (priority.toAttribute().equals(attribute)) {
+				return priority;
+			}
+		}
+		return NORMAL;
+	}
+}
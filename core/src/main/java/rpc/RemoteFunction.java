@@ -0,0 +1,26 @@
+package rpc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a method of a stub interface to a remote function with another name.
+ * Without this annotation, the method name is the name of the remote function.
+ * 
+ * @see Controller#createStub(Class)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RemoteFunction {
+
+	/**
+	 * Returns the name of the remote function.
+	 * 
+	 * @return name of the remote function, e.g. keras_test_numpy
+	 */
+	String value();
+}
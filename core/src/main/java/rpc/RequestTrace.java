@@ -0,0 +1,249 @@
+package rpc;
+
+import java.util.Map;
+
+/**
+ * End-to-end timing of one request: client side phases measured by the proxy, merged with the timing block
+ * reported by the server, see timing.py.
+ *
+ * The response time is the time between sending the request and receiving its response. The part not
+ * accounted for by the server is the network time, including the transfer and the server's socket handling.
+ *
+ * All durations are in [ms].
+ */
+public class RequestTrace {
+
+	/** Name of the called function, null for pre-encoded requests. */
+	private final String method;
+	/** Id of the request. */
+	private final Object id;
+	/** Start of the request [ms since the epoch]. */
+	private final long startTime;
+	/** Start of the request [ns, see System.nanoTime()]. */
+	private final long start;
+	/** Request encoded [ns], 0 if not measured. */
+	private long encoded;
+	/** Request written [ns], 0 if not measured. Volatile, since shared connections mark it in their writer thread. */
+	private volatile long sent;
+	/** Response read [ns], 0 if not measured. Volatile, since shared connections mark it in their reader thread. */
+	private volatile long received;
+	/** Response decoded [ns]. */
+	private long decoded;
+	/** Timing block of the server, null if the server did not report one. */
+	private Map<?, ?> serverTiming;
+
+	/**
+	 * Constructor, starts the trace.
+	 *
+	 * @param method Name of the called function, null for pre-encoded requests
+	 * @param id Id of the request
+	 */
+	RequestTrace(String method, Object id) {
+		this.method = method;
+		this.id = id;
+		this.startTime = System.currentTimeMillis();
+		this.start = System.nanoTime();
+	}
+
+	/** Marks the request as encoded. */
+	void markEncoded() {
+		encoded = System.nanoTime();
+	}
+
+	/** Marks the request as written to the connection. */
+	void markSent() {
+		sent = System.nanoTime();
+	}
+
+	/** Marks the response as read from the connection. */
+	void markReceived() {
+		markReceived(System.nanoTime());
+	}
+
+	/**
+	 * Marks the response as read from the connection.
+	 *
+	 * @param time Time the response frame has been read [ns, see System.nanoTime()]
+	 */
+	void markReceived(long time) {
+		received = time;
+	}
+
+	/**
+	 * Marks the response as decoded and merges the server timing. Phases the transport could not measure
+	 * separately are accounted to the response time.
+	 *
+	 * @param serverTiming timing block of the response or null
+	 */
+	void complete(Object serverTiming) {
+		decoded = System.nanoTime();
+		if (encoded == 0) {
+			encoded = start;
+		}
+		if (sent == 0) {
+			sent = encoded;
+		}
+		if (received == 0) {
+			received = decoded;
+		}
+		this.serverTiming = serverTiming instanceof Map ? (Map<?, ?>) serverTiming : null;
+	}
+
+	/**
+	 * Returns the name of the called function.
+	 *
+	 * @return the method, null for pre-encoded requests
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the id of the request.
+	 *
+	 * @return the id
+	 */
+	public Object getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the start of the request.
+	 *
+	 * @return start [ms since the epoch]
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the time to encode the request on the client.
+	 *
+	 * @return encode time [ms]
+	 */
+	public double getEncodeTime() {
+		return millis(encoded - start);
+	}
+
+	/**
+	 * Returns the time to write the request to the connection.
+	 *
+	 * @return send time [ms]
+	 */
+	public double getSendTime() {
+		return millis(sent - encoded);
+	}
+
+	/**
+	 * Returns the time between sending the request and receiving its response.
+	 *
+	 * @return response time [ms]
+	 */
+	public double getResponseTime() {
+		return millis(received - sent);
+	}
+
+	/**
+	 * Returns the time to decode the response on the client.
+	 *
+	 * @return decode time [ms]
+	 */
+	public double getDecodeTime() {
+		return millis(decoded - received);
+	}
+
+	/**
+	 * Returns the total time of the request on the client.
+	 *
+	 * @return total time [ms]
+	 */
+	public double getTotalTime() {
+		return millis(decoded - start);
+	}
+
+	/**
+	 * Returns whether the server reported its timing.
+	 *
+	 * @return true if the server timing is available
+	 */
+	public boolean hasServerTiming() {
+		return serverTiming != null;
+	}
+
+	/**
+	 * Returns the time the server has read the request.
+	 *
+	 * @return received time [ms since the epoch, server clock], NaN if not reported
+	 */
+	public double getServerReceivedTime() {
+		return serverValue("received");
+	}
+
+	/**
+	 * Returns the time the server took to decode the request.
+	 *
+	 * @return decode time [ms], NaN if not reported
+	 */
+	public double getServerDecodeTime() {
+		return serverValue("decode");
+	}
+
+	/**
+	 * Returns the time the request waited on the server for its execution.
+	 *
+	 * @return queue time [ms], NaN if not reported
+	 */
+	public double getServerQueueTime() {
+		return serverValue("queue");
+	}
+
+	/**
+	 * Returns the time the server took to execute the function.
+	 *
+	 * @return execution time [ms], NaN if not reported
+	 */
+	public double getServerExecuteTime() {
+		return serverValue("execute");
+	}
+
+	/**
+	 * Returns the time the server took to encode the response.
+	 *
+	 * @return encode time [ms], NaN if not reported
+	 */
+	public double getServerEncodeTime() {
+		return serverValue("encode");
+	}
+
+	/**
+	 * Returns the part of the response time not accounted for by the server.
+	 *
+	 * @return network time [ms], NaN if the server did not report its timing
+	 */
+	public double getNetworkTime() {
+		double server = getServerDecodeTime() + getServerQueueTime() + getServerExecuteTime() + getServerEncodeTime();
+		return Math.max(0, getResponseTime() - server);
+	}
+
+	private double serverValue(String key) {
+		Object value = serverTiming != null ? serverTiming.get(key) : null;
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		string.append(String.format("%s #%s: total %.3fms = encode %.3f + send %.3f + response %.3f + decode %.3f",
+				method, id, getTotalTime(), getEncodeTime(), getSendTime(), getResponseTime(), getDecodeTime()));
+		if (hasServerTiming()) {
+			string.append(String.format(" (network %.3f, server decode %.3f, queue %.3f, execute %.3f, encode %.3f)",
+					getNetworkTime(), getServerDecodeTime(), getServerQueueTime(), getServerExecuteTime(),
+					getServerEncodeTime()));
+		}
+		return string.toString();
+	}
+}
@@ -0,0 +1,16 @@
+package rpc;
+
+/**
+ * Listener receiving the traces of sampled requests, see {@link RpcProxy#setTraceListener(RequestTraceListener, double)}.
+ *
+ * Called by the thread completing the request, thus implementations must be thread-safe and fast.
+ */
+public interface RequestTraceListener {
+
+	/**
+	 * Called when a sampled request has completed successfully.
+	 *
+	 * @param trace the trace of the request
+	 */
+	void onTrace(RequestTrace trace);
+}
@@ -0,0 +1,276 @@
+package rpc;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Base RPC proxy class encapsulating RPC communication.
+ * 
+ * @author rkurmann
+ * @since Polysun 9.1
+ *
+ */
+public abstract class RpcProxy {
+
+	/** Static instance of the Logger for this class */
+	protected static Logger sLog = Logger.getLogger(RpcProxy.class.getName());
+
+	/** Deadline value for calls without a deadline. */
+	public static final long NO_DEADLINE = 0;
+
+	/** Method of the servers chaining functions, see {@link #callPipeline(List, Map, int, long)}. */
+	public static final String PIPELINE_METHOD = "pipeline";
+
+	/** Name of the RPC function to call. Comes from the controller element GUI. */
+	protected String rpcFunction;
+	
+	/** URL of the webservice having the RPC control functions. */
+	protected URL rpcServerURL = null;
+	
+	/** Connection timeout [ms]. 0 may mean wait forever. */
+	protected int connectionTimeout = 10000;
+	
+	/** Read timeout [ms]. 0 may mean wait forever. */
+	protected int readTimeout = 10000;
+	
+	/**
+	 * Verbose level.
+	 * 0 = default
+	 * 1 = verbose
+	 * 2 = debug
+	 * Comes from the controller element GUI.
+	 */
+	protected int verboseLevel;
+
+	/** Listener receiving the traces of sampled requests, null if tracing is disabled. */
+	protected volatile RequestTraceListener traceListener;
+
+	/** Fraction of the requests traced, between 0 and 1. */
+	protected volatile double traceSamplingRate;
+
+	/** Recorder of the calls, null if recording is disabled. */
+	protected volatile TrafficRecorder recorder;
+
+	/** Id of the next request numbered by the proxy, beyond the int ids given by the callers. */
+	private final AtomicLong nextRequestId = new AtomicLong(Integer.MAX_VALUE + 1L);
+
+	/** Empty paramters object. */
+	final protected Map<String, Object> emptyParamters = new HashMap<String, Object>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param rpcServerURL URL of the RPC server for the function calls, e.g. http://localhost:2102/control
+	 * @param rpcFunction Name of the RPC function, e.g. controlFlowrate
+	 * @param connectionTimeout Connection timeout [ms] 0 may mean wait forever.
+	 * @param readTimeout Read timeout [ms] 0 may mean wait forever.
+	 * @param verboseLevel Level of verbosity
+	 */
+	protected RpcProxy(URL rpcServerURL, String rpcFunction, int connectionTimeout, int readTimeout, int verboseLevel) {
+		this.rpcServerURL = rpcServerURL;
+		this.rpcFunction = rpcFunction;
+		this.connectionTimeout = connectionTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Calls the remote function.
+	 * 
+	 * @param parameters
+	 *            Map&lt;String, Object&gt;: Generic parameters
+	 * @return
+	 * 
+	 * @throws Throwable
+	 *             For any problems
+	 */
+	public abstract ControlFunctionResponse callRemoteFunction(
+			Map<String, Object> parameters, int request_id) throws Throwable;
+
+	/**
+	 * Calls the remote function with a deadline.
+	 * 
+	 * The deadline is sent with the request, such that the server does not execute the request once it has expired.
+	 * 
+	 * @param parameters
+	 *            Map&lt;String, Object&gt;: Generic parameters
+	 * @param request_id id of the request
+	 * @param deadline Deadline [ms since the epoch, see {@link System#currentTimeMillis()}] or {@link #NO_DEADLINE}
+	 * @return the response of the remote function
+	 * 
+	 * @throws Throwable
+	 *             For any problems, a {@link java.net.SocketTimeoutException} if the deadline has passed
+	 */
+	public abstract ControlFunctionResponse callRemoteFunction(
+			Map<String, Object> parameters, int request_id, long deadline) throws Throwable;
+
+	/**
+	 * Calls the remote function with a deadline and a priority.
+	 * 
+	 * @param parameters
+	 *            Map&lt;String, Object&gt;: Generic parameters
+	 * @param request_id id of the request
+	 * @param deadline Deadline [ms since the epoch, see {@link System#currentTimeMillis()}] or {@link #NO_DEADLINE}
+	 * @param priority priority class of the call
+	 * @return the response of the remote function
+	 * 
+	 * @throws Throwable
+	 *             For any problems, a {@link java.net.SocketTimeoutException} if the deadline has passed
+	 */
+	public abstract ControlFunctionResponse callRemoteFunction(
+			Map<String, Object> parameters, int request_id, long deadline, Priority priority) throws Throwable;
+
+	public abstract JSONRPC2Response invoke(JSONRPC2Request request) throws Exception;
+
+	/**
+	 * Invokes a request with a deadline.
+	 * 
+	 * @param request the JSON-RPC request
+	 * @param deadline Deadline [ms since the epoch] or {@link #NO_DEADLINE}
+	 * @return the JSON-RPC response
+	 * @throws Exception for problems, a {@link java.net.SocketTimeoutException} if the deadline has passed
+	 */
+	public abstract JSONRPC2Response invoke(JSONRPC2Request request, long deadline) throws Exception;
+
+	/**
+	 * Invokes a pre-encoded JSON-RPC request.
+	 * 
+	 * @param rawRequest JSON-RPC request, including the "deadline" attribute if any
+	 * @param requestId id of the request
+	 * @param deadline Deadline [ms since the epoch] or {@link #NO_DEADLINE}
+	 * @return the JSON-RPC response
+	 * @throws Exception for problems, a {@link java.net.SocketTimeoutException} if the deadline has passed
+	 */
+	public abstract JSONRPC2Response invoke(String rawRequest, Object requestId, long deadline) throws Exception;
+
+	/**
+	 * Calls a sequence of remote functions in one round trip. The server calls the first function with the
+	 * parameters and each following function with the result of the previous one, only the result of the last
+	 * function is sent back. A tuple result is passed as positional parameters, see request_jsonrpc.pipeline().
+	 * 
+	 * @param functions names of the functions, e.g. keras_preprocess, keras_predict, keras_postprocess
+	 * @param parameters
+	 *            Map&lt;String, Object&gt;: Generic parameters of the first function
+	 * @param request_id id of the request
+	 * @param deadline Deadline [ms since the epoch] or {@link #NO_DEADLINE}
+	 * @return the response of the last function
+	 * @throws Exception for problems, a {@link java.net.SocketTimeoutException} if the deadline has passed
+	 */
+	public ControlFunctionResponse callPipeline(List<String> functions, Map<String, Object> parameters, int request_id,
+			long deadline) throws Exception {
+		JSONRPC2Request request = new JSONRPC2Request(PIPELINE_METHOD,
+				Arrays.asList(new Object[] { functions, parameters }), request_id);
+		JSONRPC2Response response = invoke(request, deadline);
+		if (!response.indicatesSuccess()) {
+			throw new Exception(response.getError());
+		}
+		return ControlFunctionResponse.fromResult(response.getResult());
+	}
+
+	/**
+	 * Returns a new id for requests numbered by the proxy, e.g. of typed stubs. The ids are unique on the proxy
+	 * and beyond the int range, thus they do not collide with the ids of
+	 * {@link #callRemoteFunction(Map, int, long, Priority)} callers either.
+	 * 
+	 * @return the request id
+	 */
+	public long nextRequestId() {
+		return nextRequestId.getAndIncrement();
+	}
+
+	/**
+	 * Cancels a queued or running request on the server. Does nothing if the request has already completed
+	 * or the proxy does not support cancellation.
+	 * 
+	 * @param requestId id of the request to cancel
+	 * @throws Exception for problems
+	 */
+	public void cancel(Object requestId) throws Exception {
+		// Cancellation is not supported by default
+	}
+	/**
+	 * Traces a sample of the requests: the server reports its timing for sampled requests, which is merged
+	 * with the client side timing into a {@link RequestTrace} passed to the listener.
+	 * 
+	 * @param listener the listener, null disables tracing
+	 * @param samplingRate fraction of the requests traced, e.g. 0.01 for 1%, 1 for all
+	 */
+	public void setTraceListener(RequestTraceListener listener, double samplingRate) {
+		this.traceSamplingRate = samplingRate;
+		this.traceListener = listener;
+	}
+
+	/**
+	 * Records the requests and responses of this proxy, e.g. for replaying them with {@link TrafficReplay}.
+	 * The recorder is not closed by the proxy.
+	 * 
+	 * @param recorder the recorder, null disables recording
+	 */
+	public void setRecorder(TrafficRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Converts float[] to a Double[].
+	 * 
+	 * @param input input array
+	 * @return output array
+	 */
+	protected Double[] convertFloatsToDoubles(float[] input) {
+		if (input == null) {
+			return null;
+		}
+		Double[] output = new Double[input.length];
+		for (int i = 0; i < input.length; i++) {
+			output[i] = (double) input[i];
+		}
+		return output;
+	}
+
+	/**
+	 * Disconnects the RPC proxy.
+	 */
+	public abstract void disconnectProxy();
+
+	/**
+	 * Returns the verbose level.
+	 * 
+	 * @return the verboseLevel
+	 */
+	public int getVerboseLevel() {
+		return verboseLevel;
+	}
+
+	/**
+	 * Sets up the RPC proxy.
+	 * @param parameters Generic parameters
+	 * @throws Throwable For any problems
+	 */
+	public abstract void setupRpc(Map<String, Object> parameters) throws Throwable;
+
+	/**
+	 * Sets the verbose level
+	 * @param verboseLevel
+	 *            the verboseLevel to set
+	 */
+	public void setVerboseLevel(int verboseLevel) {
+		this.verboseLevel = verboseLevel;
+	}
+
+	/**
+	 * Writes a message to the RPC Server console.
+	 * @param str messate to write to the server
+	 * 
+	 * @throws Throwable  For any problems
+	 */
+	public abstract void writeMsgToServer(String str) throws Throwable;
+
+
+}
@@ -0,0 +1,358 @@
+package rpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParseException;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+/**
+ * Stream connection shared by concurrent callers, see {@link JsonRpcStreamProxy#setSharedConnection(boolean)}.
+ *
+ * Callers enqueue their encoded requests into a lock-free multi-producer queue and wait for the response.
+ * A single writer thread drains all pending requests into one gathering write per wakeup, thus under
+ * concurrency one system call and few TCP segments carry many requests. A reader thread reads the responses,
+ * which the server may send out of order, and completes the call with the same id.
+ *
+ * Each {@link Priority} has its own queue. A write takes the requests of higher priorities first, but reserves
+ * one slot for each lower priority with pending requests, thus bulk requests progress with every write.
+ */
+class SharedConnection implements Closeable {
+
+	/** Maximal number of requests coalesced into one write. */
+	private static final int MAX_BATCH = 64;
+	/** Interval the reader checks whether the connection has been closed [ms]. */
+	private static final int READ_POLL_TIMEOUT = 200;
+
+	/** A request waiting for its response. */
+	static class Call {
+		/** The encoded request. */
+		final String frame;
+		/** Raw bytes of the attachments. */
+		final ByteBuffer[] attachments;
+		/** Id of the request as string. */
+		final String key;
+		/** Priority class of the request. */
+		final Priority priority;
+		/** Trace of the request or null. */
+		final RequestTrace trace;
+		/** Completed with the response frame. */
+		final CompletableFuture<Frame> response = new CompletableFuture<Frame>();
+		/** Set by the writer taking the request, or by the caller giving up the call before. */
+		final AtomicBoolean taken = new AtomicBoolean();
+		/** Whether the caller gave up the call before the writer took the request. */
+		volatile boolean withdrawn;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param frame the encoded request
+		 * @param attachments raw bytes of the attachments
+		 * @param id id of the request
+		 * @param priority priority class of the request
+		 * @param trace trace of the request or null
+		 */
+		Call(String frame, ByteBuffer[] attachments, Object id, Priority priority, RequestTrace trace) {
+			this.frame = frame;
+			this.attachments = attachments;
+			this.key = String.valueOf(id);
+			this.priority = priority;
+			this.trace = trace;
+		}
+
+		/**
+		 * Returns whether the request has been or is being written, i.e. may reach the server. Once the caller
+		 * returned from {@link SharedConnection#await(Call, int)}, a request not written never will be.
+		 *
+		 * @return true if taken by the writer
+		 */
+		boolean isWritten() {
+			return taken.get() && !withdrawn;
+		}
+	}
+
+	/** The connection. */
+	private final FrameChannel channel;
+	/** Read timeout of attachments following a response [ms]. */
+	private final int readTimeout;
+	/** Requests not yet written, by priority. */
+	private final List<Queue<Call>> outbound = new ArrayList<Queue<Call>>();
+	/** Calls waiting for their response by id. */
+	private final ConcurrentMap<String, Call> pending = new ConcurrentHashMap<String, Call>();
+	/** Whether the writer is parked or about to park. */
+	private final AtomicBoolean writerParked = new AtomicBoolean();
+	/** Writer thread. */
+	private final Thread writer;
+	/** Reader thread. */
+	private final Thread reader;
+	/** Cause the connection failed with, null while open. */
+	private volatile IOException failure;
+
+	/**
+	 * Constructor, starts the writer and reader threads.
+	 *
+	 * @param channel the connection
+	 * @param readTimeout Read timeout of attachments following a response [ms]
+	 */
+	SharedConnection(FrameChannel channel, int readTimeout) {
+		this.channel = channel;
+		this.readTimeout = readTimeout;
+		for (int i = 0; i < Priority.values().length; i++) {
+			outbound.add(new ConcurrentLinkedQueue<Call>());
+		}
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "rpc-writer");
+		reader = new Thread(new Runnable() {
+			public void run() {
+				read();
+			}
+		}, "rpc-reader");
+		writer.setDaemon(true);
+		reader.setDaemon(true);
+		writer.start();
+		reader.start();
+	}
+
+	/**
+	 * Returns whether the connection is usable.
+	 *
+	 * @return false if the connection has failed or been closed
+	 */
+	boolean isOpen() {
+		return failure == null;
+	}
+
+	/**
+	 * Returns the underlying connection, e.g. for notifications.
+	 *
+	 * @return the connection
+	 */
+	FrameChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Enqueues the request, unless a request with the same id is waiting for its response.
+	 *
+	 * @param call the call
+	 * @return false if the id is in use
+	 * @throws IOException if the connection has failed
+	 */
+	boolean submit(Call call) throws IOException {
+		IOException failure = this.failure;
+		if (failure != null) {
+			throw failure;
+		}
+		if (pending.putIfAbsent(call.key, call) != null) {
+			return false;
+		}
+		failure = this.failure;
+		if (failure != null) {
+			// Failed concurrently, possibly after failing the pending calls
+			pending.remove(call.key, call);
+			throw failure;
+		}
+		outbound.get(call.priority.ordinal()).offer(call);
+		if (writerParked.get()) {
+			LockSupport.unpark(writer);
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for the response of the call. On timeout the call is given up, a late response is dropped, and the
+	 * request is not written if still queued.
+	 *
+	 * @param call the submitted call
+	 * @param timeout Timeout [ms] 0 may mean wait forever.
+	 * @return the response frame
+	 * @throws SocketTimeoutException if no response has been received within the timeout
+	 * @throws IOException if the connection has failed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	Frame await(Call call, int timeout) throws IOException, InterruptedException {
+		try {
+			return timeout > 0 ? call.response.get(timeout, TimeUnit.MILLISECONDS) : call.response.get();
+		} catch (TimeoutException e) {
+			withdraw(call);
+			throw new SocketTimeoutException("Read timed out");
+		} catch (InterruptedException e) {
+			withdraw(call);
+			throw e;
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Gives up the call, its request is not written anymore if the writer has not taken it yet.
+	 */
+	private void withdraw(Call call) {
+		pending.remove(call.key, call);
+		call.withdrawn = call.taken.compareAndSet(false, true);
+	}
+
+	/**
+	 * Writer loop: drains the queue into gathering writes, parks while it is empty.
+	 */
+	private void write() {
+		List<Call> batch = new ArrayList<Call>(MAX_BATCH);
+		List<String> frames = new ArrayList<String>(MAX_BATCH);
+		List<ByteBuffer[]> attachments = new ArrayList<ByteBuffer[]>(MAX_BATCH);
+		try {
+			while (failure == null) {
+				takeBatch(batch);
+				if (batch.isEmpty()) {
+					writerParked.set(true);
+					// Re-check after announcing the park, such that no submit is missed
+					if (isIdle() && failure == null) {
+						LockSupport.park(this);
+					}
+					writerParked.set(false);
+					continue;
+				}
+				for (Call call : batch) {
+					frames.add(call.frame);
+					attachments.add(call.attachments);
+				}
+				channel.writeFrames(frames, attachments);
+				for (Call call : batch) {
+					if (call.trace != null) {
+						call.trace.markSent();
+					}
+				}
+				batch.clear();
+				frames.clear();
+				attachments.clear();
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Takes the requests of the next write, highest priority first. One slot is reserved for each lower
+	 * priority with pending requests, such that high priority load cannot starve them.
+	 */
+	private void takeBatch(List<Call> batch) {
+		for (int lane = 0; lane < outbound.size(); lane++) {
+			int reserved = 0;
+			for (int lower = lane + 1; lower < outbound.size(); lower++) {
+				if (!outbound.get(lower).isEmpty()) {
+					reserved++;
+				}
+			}
+			Call call;
+			while (batch.size() < MAX_BATCH - reserved && (call = outbound.get(lane).poll()) != null) {
+				// Skip calls given up while queued
+				if (call.taken.compareAndSet(false, true)) {
+					batch.add(call);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether no request is waiting to be written.
+	 */
+	private boolean isIdle() {
+		for (Queue<Call> queue : outbound) {
+			if (!queue.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reader loop: completes the calls with the responses.
+	 */
+	private void read() {
+		try {
+			while (failure == null) {
+				String rawResponse;
+				try {
+					rawResponse = channel.readFrame(READ_POLL_TIMEOUT);
+				} catch (SocketTimeoutException e) {
+					continue;
+				}
+				if (rawResponse == null) {
+					throw new IOException("Connection closed by server");
+				}
+				long received = System.nanoTime();
+				JSONRPC2Response response = JSONRPC2Response.parse(rawResponse, false, true, true);
+				ByteBuffer[] attachments;
+				try {
+					attachments = Attachments.read(channel, response, readTimeout);
+				} catch (SocketTimeoutException e) {
+					// Unread attachment bytes would be read as the next frame, thus any failure after a frame has been
+					// read fails the connection, the proxy reconnects with the next call
+					throw new IOException("Attachments of the response not received within " + readTimeout + "ms", e);
+				}
+				Call call = pending.remove(String.valueOf(response.getID()));
+				if (call == null) {
+					// Response of a request that has been given up, e.g. after its deadline
+					if (RpcProxy.sLog.isLoggable(Level.FINE)) {
+						RpcProxy.sLog.fine("Skip stale response: " + rawResponse);
+					}
+					continue;
+				}
+				if (call.trace != null) {
+					// Read time of the frame, like a dedicated connection, decoding the attachments is not network time
+					call.trace.markReceived(received);
+				}
+				call.response.complete(new Frame(rawResponse, attachments, response));
+			}
+		} catch (JSONRPC2ParseException e) {
+			fail(new IOException("Invalid response: " + e.getMessage(), e));
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Marks the connection as failed and fails all waiting calls.
+	 */
+	private void fail(IOException cause) {
+		if (failure == null) {
+			failure = cause;
+		}
+		LockSupport.unpark(writer);
+		for (Call call : pending.values()) {
+			call.response.completeExceptionally(failure);
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Fails the waiting calls and stops the threads. The connection itself is closed by the caller.
+	 */
+	@Override
+	public void close() {
+		fail(new IOException("Connection closed"));
+		try {
+			writer.join(READ_POLL_TIMEOUT);
+			reader.join(2 * READ_POLL_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package rpc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import net.minidev.json.JSONAware;
+
+/**
+ * Sparse matrix of shape [rows, cols] in compressed sparse row (CSR) format, transferred by
+ * {@link JsonRpcStreamProxy} as three attachments: the row pointers "indptr" (int32, rows + 1), the column
+ * "indices" (int32) and the values "data" (float32) of the non-zero elements. The payload and the encoding time
+ * are proportional to the number of non-zero elements instead of the size of the matrix, e.g. for one-hot features.
+ *
+ * The Python side materializes the matrix as dense numpy array, or as scipy.sparse matrix for functions declared
+ * with attachments.sparse_input(), see attachments.py. Over other transports the matrix is encoded as dense nested
+ * JSON lists.
+ *
+ * @see Tensor
+ */
+public class SparseTensor implements JSONAware {
+
+	/** Compressed sparse row format, the only format supported. */
+	public static final String CSR = "csr";
+
+	/** Number of rows. */
+	private final int rows;
+	/** Number of columns. */
+	private final int cols;
+	/** Row pointers, int32 [rows + 1]: the elements of row i are at indptr[i] until indptr[i + 1]. */
+	private final Tensor indptr;
+	/** Column indices of the elements, int32 [nnz]. */
+	private final Tensor indices;
+	/** Values of the elements, float32 [nnz]. */
+	private final Tensor data;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rows Number of rows
+	 * @param cols Number of columns
+	 * @param indptr Row pointers, int32 [rows + 1]
+	 * @param indices Column indices, int32 [nnz]
+	 * @param data Values, [nnz]
+	 */
+	public SparseTensor(int rows, int cols, Tensor indptr, Tensor indices, Tensor data) {
+		if (!Tensor.INT32.equals(indptr.getDtype()) || !Tensor.INT32.equals(indices.getDtype())) {
+			throw new IllegalArgumentException("indptr and indices must be int32");
+		}
+		if (indptr.size() != rows + 1 || indices.size() != data.size()) {
+			throw new IllegalArgumentException("Sparse tensor of " + rows + " rows requires " + (rows + 1)
+					+ " row pointers and as many indices as values, but has " + indptr.size() + ", " + indices.size()
+					+ " and " + data.size());
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.indptr = indptr;
+		this.indices = indices;
+		this.data = data;
+	}
+
+	/**
+	 * Creates a sparse tensor of the non-zero elements of a matrix.
+	 *
+	 * @param matrix the matrix, all rows must have the same length
+	 * @return the sparse tensor
+	 */
+	public static SparseTensor of(float[][] matrix) {
+		int cols = matrix.length > 0 ? matrix[0].length : 0;
+		Builder builder = builder(matrix.length, cols);
+		for (int i = 0; i < matrix.length; i++) {
+			if (matrix[i].length != cols) {
+				throw new IllegalArgumentException("Rows must have the same length");
+			}
+			for (int j = 0; j < cols; j++) {
+				if (matrix[i][j] != 0) {
+					builder.add(i, j, matrix[i][j]);
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns a builder of a sparse tensor, for matrices too large to be created dense.
+	 *
+	 * @param rows Number of rows
+	 * @param cols Number of columns
+	 * @return the builder
+	 */
+	public static Builder builder(int rows, int cols) {
+		return new Builder(rows, cols);
+	}
+
+	/**
+	 * Returns the shape.
+	 *
+	 * @return [rows, cols]
+	 */
+	public int[] getShape() {
+		return new int[] { rows, cols };
+	}
+
+	/**
+	 * Returns the row pointers.
+	 *
+	 * @return int32 tensor [rows + 1]
+	 */
+	public Tensor getIndptr() {
+		return indptr;
+	}
+
+	/**
+	 * Returns the column indices of the elements.
+	 *
+	 * @return int32 tensor [nnz]
+	 */
+	public Tensor getIndices() {
+		return indices;
+	}
+
+	/**
+	 * Returns the values of the elements.
+	 *
+	 * @return tensor [nnz]
+	 */
+	public Tensor getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the number of stored elements.
+	 *
+	 * @return nnz
+	 */
+	public int nnz() {
+		return data.size();
+	}
+
+	/**
+	 * Returns the dense matrix.
+	 *
+	 * @return the matrix [rows][cols]
+	 */
+	public float[][] toDense() {
+		float[][] matrix = new float[rows][cols];
+		IntBuffer pointers = indptr.getData().asIntBuffer();
+		IntBuffer columns = indices.getData().asIntBuffer();
+		float[] values = data.toFloatArray();
+		for (int i = 0; i < rows; i++) {
+			for (int k = pointers.get(i); k < pointers.get(i + 1); k++) {
+				matrix[i][columns.get(k)] = values[k];
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Encodes the matrix as dense nested JSON lists, for transports without attachments.
+	 */
+	@Override
+	public String toJSONString() {
+		StringBuilder json = new StringBuilder("[");
+		float[][] matrix = toDense();
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append('[');
+			for (int j = 0; j < cols; j++) {
+				if (j > 0) {
+					json.append(',');
+				}
+				json.append(matrix[i][j]);
+			}
+			json.append(']');
+		}
+		return json.append(']').toString();
+	}
+
+	@Override
+	public String toString() {
+		return "SparseTensor[" + CSR + ", " + Arrays.toString(getShape()) + ", nnz " + nnz() + "]";
+	}
+
+	/**
+	 * Builder of a {@link SparseTensor}, the elements are added in row-major order.
+	 */
+	public static class Builder {
+
+		private final int rows;
+		private final int cols;
+		private final int[] indptr;
+		private int[] indices = new int[16];
+		private float[] values = new float[16];
+		private int nnz;
+		/** Row of the last element. */
+		private int row;
+
+		private Builder(int rows, int cols) {
+			this.rows = rows;
+			this.cols = cols;
+			this.indptr = new int[rows + 1];
+		}
+
+		/**
+		 * Adds an element.
+		 *
+		 * @param row the row, not less than the row of the previous element
+		 * @param col the column, greater than the column of the previous element of the same row
+		 * @param value the value
+		 * @return this builder
+		 * @throws IndexOutOfBoundsException if the element is outside of the shape
+		 * @throws IllegalArgumentException if the element is not added in row-major order, or added twice
+		 */
+		public Builder add(int row, int col, float value) {
+			if (row < 0 || row >= rows || col < 0 || col >= cols) {
+				throw new IndexOutOfBoundsException("Element [" + row + ", " + col + "] outside of [" + rows + ", "
+						+ cols + "]");
+			}
+			// The elements of the current row start at indptr[row], set when the row has been entered
+			if (row < this.row || (row == this.row && nnz > indptr[row] && col <= indices[nnz - 1])) {
+				throw new IllegalArgumentException("Element [" + row + ", " + col + "] "
+						+ (row == this.row && col == indices[nnz - 1] ? "added twice" : "not added in row-major order"));
+			}
+			// Rows between the previous element and this one are empty
+			for (int i = this.row + 1; i <= row; i++) {
+				indptr[i] = nnz;
+			}
+			this.row = row;
+			if (nnz == values.length) {
+				indices = Arrays.copyOf(indices, nnz * 2);
+				values = Arrays.copyOf(values, nnz * 2);
+			}
+			indices[nnz] = col;
+			values[nnz] = value;
+			nnz++;
+			return this;
+		}
+
+		/**
+		 * Builds the sparse tensor.
+		 *
+		 * @return the sparse tensor
+		 */
+		public SparseTensor build() {
+			for (int i = row + 1; i <= rows; i++) {
+				indptr[i] = nnz;
+			}
+			ByteBuffer pointers = ByteBuffer.allocate(indptr.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+			pointers.asIntBuffer().put(indptr);
+			ByteBuffer columns = ByteBuffer.allocate(nnz * 4).order(ByteOrder.LITTLE_ENDIAN);
+			columns.asIntBuffer().put(indices, 0, nnz);
+			ByteBuffer elements = ByteBuffer.allocate(nnz * 4).order(ByteOrder.LITTLE_ENDIAN);
+			elements.asFloatBuffer().put(values, 0, nnz);
+			return new SparseTensor(rows, cols, new Tensor(Tensor.INT32, new int[] { rows + 1 }, pointers),
+					new Tensor(Tensor.INT32, new int[] { nnz }, columns), new Tensor(Tensor.FLOAT32, new int[] { nnz },
+							elements));
+		}
+	}
+}
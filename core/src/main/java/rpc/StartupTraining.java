@@ -0,0 +1,62 @@
+package rpc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+/**
+ * Training run for a class data sharing (CDS) archive of the client, such that short-lived JVMs load the
+ * classes of the call path (proxies, framing, JSON encoding, tensors) mapped from the archive instead of
+ * parsing and verifying them from the jars on every start.
+ *
+ * The run connects to a server and makes a few calls, with a tensor parameter if a function is given.
+ * Build the jar with the dependencies, create the archive once and start the batch JVMs with it:
+ * <pre>
+ * mvn package -P cds
+ * java -XX:ArchiveClassesAtExit=py4j-rpc.jsa -jar core/target/py4j-rpc-1.0-SNAPSHOT.jar jsonrpc2://localhost:2102 keras_test_numpy
+ * java -XX:SharedArchiveFile=py4j-rpc.jsa -cp core/target/py4j-rpc-1.0-SNAPSHOT.jar:app.jar app.Main
+ * </pre>
+ * The archive is valid for the same JDK and a class path starting with the same jars. Classes of the pre Java 6
+ * class file format (json-smart) and the classes linked against them are not archived.
+ */
+public class StartupTraining {
+
+	/** Number of calls per function, enough to resolve the lazily linked call sites. */
+	private static final int CALLS = 20;
+
+	/**
+	 * Runs the training calls.
+	 *
+	 * @param args server URL (default jsonrpc2://localhost:2102), function called with a tensor "feature" (optional)
+	 * @throws Throwable for any problems
+	 */
+	public static void main(String... args) throws Throwable {
+		String serverURL = args.length > 0 ? args[0] : "jsonrpc2://localhost:2102";
+		String function = args.length > 1 ? args[1] : null;
+		Controller controller = new Controller();
+		controller.setupRpc(serverURL.startsWith("http") ? Controller.RpcType.JSON : Controller.RpcType.JSON_STREAM,
+				serverURL, function != null ? function : "ping", 10000, 10000, 0);
+		try {
+			for (int i = 0; i < CALLS; i++) {
+				JSONRPC2Response response = controller.getRpcProxy().invoke(new JSONRPC2Request("ping", i));
+				if (!response.indicatesSuccess()) {
+					throw new IllegalStateException("ping failed: " + response.getError().getMessage());
+				}
+			}
+			if (function != null) {
+				Map<String, Object> parameters = new HashMap<String, Object>();
+				parameters.put("feature", Tensor.of(new float[][] { { 0, 0, 0, 1 } }));
+				parameters.put("rows", 1);
+				parameters.put("cols", 4);
+				for (int i = 0; i < CALLS; i++) {
+					controller.callRemoteFunction(parameters, CALLS + i);
+				}
+			}
+			System.out.println("Training calls against " + serverURL + " finished");
+		} finally {
+			controller.closeResources();
+		}
+	}
+}
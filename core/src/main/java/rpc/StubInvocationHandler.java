@@ -0,0 +1,180 @@
+package rpc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+/**
+ * Invocation handler of typed stubs created by {@link Controller#createStub(Class)}.
+ *
+ * Each stub method maps to a remote function. The request prefix up to the parameters is encoded once,
+ * such that only the parameters and the id are encoded per call. Calls with {@link Tensor} or
+ * {@link SparseTensor} arguments are not pre-encoded, such that the proxy sends the tensors as attachments.
+ */
+class StubInvocationHandler implements InvocationHandler {
+
+	/** Pre-encoded request of a stub method. */
+	private static class RequestTemplate {
+		/** Name of the remote function. */
+		final String rpcFunction;
+		/** Request up to the first parameter, e.g. {"jsonrpc":"2.0","method":"keras_test_numpy","params":[ */
+		final String prefix;
+
+		RequestTemplate(String rpcFunction) {
+			this.rpcFunction = rpcFunction;
+			this.prefix = "{\"jsonrpc\":\"2.0\",\"method\":" + JSONValue.toJSONString(rpcFunction) + ",\"params\":[";
+		}
+
+		String encode(Object[] args, long requestId, long deadline) {
+			StringBuilder request = new StringBuilder(prefix);
+			if (args != null) {
+				for (int i = 0; i < args.length; i++) {
+					if (i > 0) {
+						request.append(',');
+					}
+					request.append(JSONValue.toJSONString(args[i]));
+				}
+			}
+			request.append("],\"id\":").append(requestId);
+			if (deadline != RpcProxy.NO_DEADLINE) {
+				request.append(",\"deadline\":").append(deadline);
+			}
+			return request.append('}').toString();
+		}
+	}
+
+	/** The RPC proxy sending the requests. */
+	private final RpcProxy rpcProxy;
+	/** Request templates of the stub methods. */
+	private final Map<Method, RequestTemplate> templates = new HashMap<Method, RequestTemplate>();
+	/** Timeout of the calls [ms], sent as deadline, 0 for calls without deadline. */
+	private final long callTimeout;
+
+	/**
+	 * Constructor validating the stub methods against the functions registered on the server.
+	 *
+	 * @param rpcProxy the RPC proxy
+	 * @param stubInterface the stub interface
+	 * @param callTimeout Timeout of the calls [ms], 0 for calls without deadline
+	 * @throws Exception for problems
+	 * @throws IllegalArgumentException if a remote function does not exist or has another number of parameters
+	 */
+	StubInvocationHandler(RpcProxy rpcProxy, Class<?> stubInterface, long callTimeout) throws Exception {
+		this.rpcProxy = rpcProxy;
+		this.callTimeout = callTimeout;
+		Map<String, JSONObject> functions = describe(rpcProxy);
+		for (Method method : stubInterface.getMethods()) {
+			RemoteFunction annotation = method.getAnnotation(RemoteFunction.class);
+			String rpcFunction = annotation != null ? annotation.value() : method.getName();
+			JSONObject function = functions.get(rpcFunction);
+			if (function == null) {
+				throw new IllegalArgumentException("Remote function " + rpcFunction + " of " + method + " not found on server");
+			}
+			int numParams = ((List<?>) function.get("params")).size();
+			// Parameters with defaults may be omitted, servers not reporting "required" require all
+			Object required = function.get("required");
+			int numRequired = required instanceof Number ? ((Number) required).intValue() : numParams;
+			boolean varargs = Boolean.TRUE.equals(function.get("varargs"));
+			if (method.getParameterTypes().length < numRequired
+					|| (!varargs && method.getParameterTypes().length > numParams)) {
+				throw new IllegalArgumentException("Remote function " + rpcFunction + " expects parameters "
+						+ function.get("params") + (numRequired < numParams ? ", of which " + numRequired + " required" : "")
+						+ ", but " + method + " has " + method.getParameterTypes().length);
+			}
+			templates.put(method, new RequestTemplate(rpcFunction));
+		}
+	}
+
+	/**
+	 * Returns the functions registered on the server by name.
+	 */
+	private static Map<String, JSONObject> describe(RpcProxy rpcProxy) throws Exception {
+		JSONRPC2Response response = rpcProxy.invoke(new JSONRPC2Request("describe", "describe"));
+		if (!response.indicatesSuccess()) {
+			throw new Exception(response.getError());
+		}
+		Map<String, JSONObject> functions = new HashMap<String, JSONObject>();
+		for (Object function : (JSONArray) response.getResult()) {
+			functions.put((String) ((JSONObject) function).get("name"), (JSONObject) function);
+		}
+		return functions;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		RequestTemplate template = templates.get(method);
+		if (template == null) {
+			// Methods of Object
+			if ("equals".equals(method.getName())) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(method.getName())) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(method.getName())) {
+				return "Stub@" + Integer.toHexString(System.identityHashCode(proxy));
+			}
+			throw new UnsupportedOperationException(method.toString());
+		}
+		// Ids of the proxy, such that they do not collide with other stubs or callers on the connection
+		long requestId = rpcProxy.nextRequestId();
+		long deadline = callTimeout > 0 ? System.currentTimeMillis() + callTimeout : RpcProxy.NO_DEADLINE;
+		JSONRPC2Response response;
+		if (args != null && Attachments.containsTensors(Arrays.asList(args))) {
+			response = rpcProxy.invoke(new JSONRPC2Request(template.rpcFunction, Arrays.asList(args), requestId), deadline);
+		} else {
+			response = rpcProxy.invoke(template.encode(args, requestId, deadline), requestId, deadline);
+		}
+		if (!response.indicatesSuccess()) {
+			throw new Exception(response.getError());
+		}
+		return convertResult(response.getResult(), method.getReturnType());
+	}
+
+	/**
+	 * Converts the JSON-RPC result to the return type of the stub method.
+	 */
+	private static Object convertResult(Object result, Class<?> type) {
+		if (type == void.class) {
+			return null;
+		} else if (type == ControlFunctionResponse.class) {
+			return ControlFunctionResponse.fromResult(result);
+		} else if (type == float[].class) {
+			return ControlFunctionResponse.convertObjectArrayToFloats(result);
+		} else if (type == int[].class) {
+			return ControlFunctionResponse.convertObjectToInts(result);
+		} else if (type == String.class) {
+			return result == null ? null : String.valueOf(result);
+		} else if (result instanceof Number) {
+			Number number = (Number) result;
+			if (type == double.class || type == Double.class) {
+				return number.doubleValue();
+			} else if (type == float.class || type == Float.class) {
+				return number.floatValue();
+			} else if (type == long.class || type == Long.class) {
+				return number.longValue();
+			} else if (type == int.class || type == Integer.class) {
+				return number.intValue();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a stub.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T createStub(RpcProxy rpcProxy, Class<T> stubInterface, long callTimeout) throws Exception {
+		return (T) Proxy.newProxyInstance(stubInterface.getClassLoader(), new Class<?>[] { stubInterface },
+				new StubInvocationHandler(rpcProxy, stubInterface, callTimeout));
+	}
+}
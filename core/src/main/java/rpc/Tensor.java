@@ -0,0 +1,475 @@
+package rpc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import net.minidev.json.JSONAware;
+import net.minidev.json.JSONObject;
+
+/**
+ * Dense tensor transferred as binary attachment by {@link JsonRpcStreamProxy}: a header with dtype, shape and byte
+ * order, followed by the raw bytes. On the Python side the tensor is a numpy array created by np.frombuffer().
+ *
+ * Tensors may be used as parameters, also nested in the parameters map, and are returned for numpy arrays
+ * in the result. Over other transports a tensor is encoded as nested JSON lists.
+ *
+ * Features whose precision exceeds what the model needs may be sent with reduced precision, see
+ * {@link #of(float[], String, int...)}: {@link #FLOAT16} and {@link #BFLOAT16} halve the bytes, {@link #INT8}
+ * quantizes the values with a per-tensor scale to a quarter. The Python side decodes bfloat16 and int8 to float32.
+ *
+ * @see ControlFunctionResponse#convertObjectArrayToFloats(Object)
+ */
+public class Tensor implements JSONAware {
+
+	/** 32 bit float, numpy float32. */
+	public static final String FLOAT32 = "float32";
+	/** 64 bit float, numpy float64. */
+	public static final String FLOAT64 = "float64";
+	/** 32 bit integer, numpy int32. */
+	public static final String INT32 = "int32";
+	/** 64 bit integer, numpy int64. */
+	public static final String INT64 = "int64";
+	/** 16 bit IEEE half precision float, numpy float16. 11 bit significand, range +-65504. */
+	public static final String FLOAT16 = "float16";
+	/** 16 bit brain float, the upper half of a float32: the range of float32 with an 8 bit significand. */
+	public static final String BFLOAT16 = "bfloat16";
+	/** 8 bit integer, numpy int8. Quantized floats if the tensor has a scale, see {@link #getScale()}. */
+	public static final String INT8 = "int8";
+
+	/** Data type, e.g. {@link #FLOAT32}. */
+	private final String dtype;
+	/** Shape, e.g. [rows, cols]. */
+	private final int[] shape;
+	/** Raw data in the byte order of the buffer, position 0. */
+	private final ByteBuffer data;
+	/** Scale of quantized {@link #INT8} values (value = scale * int8), 0 if not quantized. */
+	private final double scale;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param dtype Data type, e.g. {@link #FLOAT32}
+	 * @param shape Shape, e.g. [rows, cols]
+	 * @param data Raw data in the byte order of the buffer from position to limit
+	 */
+	public Tensor(String dtype, int[] shape, ByteBuffer data) {
+		this(dtype, shape, data, 0);
+	}
+
+	/**
+	 * Constructor of a quantized tensor.
+	 *
+	 * @param dtype Data type, e.g. {@link #INT8}
+	 * @param shape Shape, e.g. [rows, cols]
+	 * @param data Raw data in the byte order of the buffer from position to limit
+	 * @param scale Scale of the values (value = scale * raw value), 0 if not quantized
+	 */
+	public Tensor(String dtype, int[] shape, ByteBuffer data, double scale) {
+		this.dtype = dtype;
+		this.shape = shape;
+		this.scale = scale;
+		this.data = data.slice().order(data.order());
+		if (this.data.remaining() != size() * elementSize(dtype)) {
+			throw new IllegalArgumentException("Tensor of shape " + Arrays.toString(shape) + " and dtype " + dtype
+					+ " requires " + size() * elementSize(dtype) + " bytes, but has " + this.data.remaining());
+		}
+	}
+
+	/**
+	 * Creates a float32 tensor.
+	 *
+	 * @param values values in row-major order
+	 * @param shape shape, by default [values.length]
+	 * @return the tensor
+	 */
+	public static Tensor of(float[] values, int... shape) {
+		ByteBuffer data = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+		data.asFloatBuffer().put(values);
+		return new Tensor(FLOAT32, shape.length == 0 ? new int[] { values.length } : shape, data);
+	}
+
+	/**
+	 * Creates a tensor of floats encoded with the given precision.
+	 *
+	 * @param values values in row-major order
+	 * @param dtype {@link #FLOAT32}, {@link #FLOAT16}, {@link #BFLOAT16} (rounded to nearest even) or {@link #INT8}
+	 *            (quantized symmetrically with the scale max(|value|) / 127)
+	 * @param shape shape, by default [values.length]
+	 * @return the tensor
+	 * @throws IllegalArgumentException for {@link #INT8} of NaN or infinite values
+	 */
+	public static Tensor of(float[] values, String dtype, int... shape) {
+		if (FLOAT32.equals(dtype)) {
+			return of(values, shape);
+		}
+		ByteBuffer data = ByteBuffer.allocate(values.length * elementSize(dtype)).order(ByteOrder.LITTLE_ENDIAN);
+		double scale = encode(values, dtype, data);
+		data.flip();
+		return new Tensor(dtype, shape.length == 0 ? new int[] { values.length } : shape, data, scale);
+	}
+
+	/**
+	 * Creates a float32 tensor of shape [rows, cols] from a matrix.
+	 *
+	 * @param matrix the matrix, all rows must have the same length
+	 * @return the tensor
+	 */
+	public static Tensor of(float[][] matrix) {
+		return of(matrix, FLOAT32);
+	}
+
+	/**
+	 * Creates a tensor of shape [rows, cols] from a matrix encoded with the given precision.
+	 *
+	 * @param matrix the matrix, all rows must have the same length
+	 * @param dtype the precision, see {@link #of(float[], String, int...)}
+	 * @return the tensor
+	 */
+	public static Tensor of(float[][] matrix, String dtype) {
+		int cols = matrix.length > 0 ? matrix[0].length : 0;
+		for (float[] row : matrix) {
+			if (row.length != cols) {
+				throw new IllegalArgumentException("Rows must have the same length");
+			}
+		}
+		if (!FLOAT32.equals(dtype)) {
+			// The scale of int8 covers the whole matrix
+			float[] values = new float[matrix.length * cols];
+			for (int i = 0; i < matrix.length; i++) {
+				System.arraycopy(matrix[i], 0, values, i * cols, cols);
+			}
+			return of(values, dtype, matrix.length, cols);
+		}
+		ByteBuffer data = ByteBuffer.allocate(matrix.length * cols * 4).order(ByteOrder.LITTLE_ENDIAN);
+		for (float[] row : matrix) {
+			data.asFloatBuffer().put(row);
+			data.position(data.position() + cols * 4);
+		}
+		data.flip();
+		return new Tensor(FLOAT32, new int[] { matrix.length, cols }, data);
+	}
+
+	/**
+	 * Encodes the floats with reduced precision into the buffer.
+	 *
+	 * @return the scale of int8, 0 otherwise
+	 */
+	private static double encode(float[] values, String dtype, ByteBuffer data) {
+		if (FLOAT16.equals(dtype)) {
+			for (float value : values) {
+				data.putShort(toFloat16(value));
+			}
+		} else if (BFLOAT16.equals(dtype)) {
+			for (float value : values) {
+				data.putShort(toBFloat16(value));
+			}
+		} else if (INT8.equals(dtype)) {
+			float max = 0;
+			for (float value : values) {
+				if (Float.isNaN(value) || Float.isInfinite(value)) {
+					// No int8 value, and the scale would be NaN or infinite
+					throw new IllegalArgumentException("int8 cannot encode " + value + ", use float16 or bfloat16");
+				}
+				max = Math.max(max, Math.abs(value));
+			}
+			float scale = max > 0 ? max / 127 : 1;
+			for (float value : values) {
+				data.put((byte) Math.max(-127, Math.min(127, Math.round(value / scale))));
+			}
+			return scale;
+		} else {
+			throw new UnsupportedOperationException("Unsupported precision " + dtype);
+		}
+		return 0;
+	}
+
+	/**
+	 * Converts a float to IEEE half precision, rounded to nearest even.
+	 *
+	 * @param value the float
+	 * @return the bits of the half precision float
+	 */
+	static short toFloat16(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+		int significand = bits & 0x7fffff;
+		if (exponent == 0xff - 127 + 15) {
+			// Infinity or NaN
+			return (short) (sign | 0x7c00 | (significand != 0 ? 0x200 : 0));
+		}
+		if (exponent >= 0x1f) {
+			return (short) (sign | 0x7c00);
+		}
+		int shift = 13;
+		int half;
+		if (exponent <= 0) {
+			// Subnormal half
+			if (exponent < -10) {
+				return (short) sign;
+			}
+			significand |= 0x800000;
+			shift = 14 - exponent;
+			half = significand >> shift;
+		} else {
+			half = (exponent << 10) | (significand >> shift);
+		}
+		int rest = significand & ((1 << shift) - 1);
+		int midpoint = 1 << (shift - 1);
+		if (rest > midpoint || (rest == midpoint && (half & 1) != 0)) {
+			// May carry into the exponent, up to infinity
+			half++;
+		}
+		return (short) (sign | half);
+	}
+
+	/**
+	 * Converts IEEE half precision to a float.
+	 *
+	 * @param half the bits of the half precision float
+	 * @return the float
+	 */
+	static float fromFloat16(short half) {
+		int sign = (half & 0x8000) << 16;
+		int exponent = (half >>> 10) & 0x1f;
+		int significand = half & 0x3ff;
+		if (exponent == 0x1f) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | (significand << 13));
+		}
+		if (exponent == 0) {
+			float subnormal = significand * 0x1p-24f;
+			return sign != 0 ? -subnormal : subnormal;
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (significand << 13));
+	}
+
+	/**
+	 * Converts a float to bfloat16, rounded to nearest even.
+	 *
+	 * @param value the float
+	 * @return the bits of the bfloat16
+	 */
+	static short toBFloat16(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		if (Float.isNaN(value)) {
+			return (short) ((bits >>> 16) | 0x40);
+		}
+		return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+	}
+
+	/**
+	 * Creates a float64 tensor.
+	 *
+	 * @param values values in row-major order
+	 * @param shape shape, by default [values.length]
+	 * @return the tensor
+	 */
+	public static Tensor of(double[] values, int... shape) {
+		ByteBuffer data = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+		data.asDoubleBuffer().put(values);
+		return new Tensor(FLOAT64, shape.length == 0 ? new int[] { values.length } : shape, data);
+	}
+
+	/**
+	 * Returns the data type.
+	 *
+	 * @return the data type, e.g. {@link #FLOAT32}
+	 */
+	public String getDtype() {
+		return dtype;
+	}
+
+	/**
+	 * Returns the shape.
+	 *
+	 * @return the shape
+	 */
+	public int[] getShape() {
+		return shape.clone();
+	}
+
+	/**
+	 * Returns the scale of quantized values.
+	 *
+	 * @return the scale (value = scale * raw value), 0 if not quantized
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * Returns the raw data.
+	 *
+	 * @return read-only view of the raw data
+	 */
+	public ByteBuffer getData() {
+		return data.asReadOnlyBuffer().order(data.order());
+	}
+
+	/**
+	 * Returns the number of elements.
+	 *
+	 * @return the product of the shape
+	 */
+	public int size() {
+		int size = 1;
+		for (int dim : shape) {
+			size *= dim;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the values in row-major order as float array, converting other data types.
+	 *
+	 * @return the values
+	 */
+	public float[] toFloatArray() {
+		float[] values = new float[size()];
+		ByteBuffer buffer = getData();
+		if (FLOAT32.equals(dtype)) {
+			buffer.asFloatBuffer().get(values);
+		} else {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = (float) getDouble(buffer, i);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the values in row-major order as double array, converting other data types.
+	 *
+	 * @return the values
+	 */
+	public double[] toDoubleArray() {
+		double[] values = new double[size()];
+		ByteBuffer buffer = getData();
+		if (FLOAT64.equals(dtype)) {
+			buffer.asDoubleBuffer().get(values);
+		} else {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = getDouble(buffer, i);
+			}
+		}
+		return values;
+	}
+
+	private double getDouble(ByteBuffer buffer, int index) {
+		if (FLOAT32.equals(dtype)) {
+			return buffer.getFloat(index * 4);
+		} else if (FLOAT64.equals(dtype)) {
+			return buffer.getDouble(index * 8);
+		} else if (INT32.equals(dtype)) {
+			return buffer.getInt(index * 4);
+		} else if (INT64.equals(dtype)) {
+			return buffer.getLong(index * 8);
+		} else if (FLOAT16.equals(dtype)) {
+			return fromFloat16(buffer.getShort(index * 2));
+		} else if (BFLOAT16.equals(dtype)) {
+			return Float.intBitsToFloat(buffer.getShort(index * 2) << 16);
+		} else if (INT8.equals(dtype)) {
+			byte value = buffer.get(index);
+			return scale != 0 ? (float) (value * scale) : value;
+		}
+		throw new UnsupportedOperationException("Unsupported dtype " + dtype);
+	}
+
+	/**
+	 * Returns the size of an element of the data type.
+	 *
+	 * @param dtype the data type
+	 * @return size [bytes]
+	 */
+	static int elementSize(String dtype) {
+		if (FLOAT32.equals(dtype) || INT32.equals(dtype)) {
+			return 4;
+		} else if (FLOAT64.equals(dtype) || INT64.equals(dtype)) {
+			return 8;
+		} else if (FLOAT16.equals(dtype) || BFLOAT16.equals(dtype)) {
+			return 2;
+		} else if (INT8.equals(dtype)) {
+			return 1;
+		}
+		throw new UnsupportedOperationException("Unsupported dtype " + dtype);
+	}
+
+	/**
+	 * Returns the attachment header, e.g. {"dtype": "float32", "shape": [3, 4], "order": "&lt;", "nbytes": 48}.
+	 * Quantized tensors have the "scale" as well.
+	 *
+	 * @return the header
+	 */
+	JSONObject header() {
+		JSONObject header = new JSONObject();
+		header.put("dtype", dtype);
+		header.put("shape", shape);
+		header.put("order", data.order() == ByteOrder.LITTLE_ENDIAN ? "<" : ">");
+		header.put("nbytes", data.remaining());
+		if (scale != 0) {
+			header.put("scale", scale);
+		}
+		return header;
+	}
+
+	/**
+	 * Creates a tensor from an attachment header and its raw data.
+	 *
+	 * @param header the attachment header
+	 * @param data the raw data
+	 * @return the tensor
+	 */
+	static Tensor fromHeader(JSONObject header, ByteBuffer data) {
+		List<?> shapeList = (List<?>) header.get("shape");
+		int[] shape = new int[shapeList.size()];
+		for (int i = 0; i < shape.length; i++) {
+			shape[i] = ((Number) shapeList.get(i)).intValue();
+		}
+		data.order(">".equals(header.get("order")) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		Object scale = header.get("scale");
+		return new Tensor((String) header.get("dtype"), shape, data, scale instanceof Number ? ((Number) scale).doubleValue() : 0);
+	}
+
+	/**
+	 * Encodes the tensor as nested JSON lists, for transports without attachments. NaN and infinite values are
+	 * encoded as null, since JSON has no literal for them.
+	 */
+	@Override
+	public String toJSONString() {
+		StringBuilder json = new StringBuilder();
+		appendJSON(json, getData(), 0, 0);
+		return json.toString();
+	}
+
+	private int appendJSON(StringBuilder json, ByteBuffer buffer, int dim, int index) {
+		if (dim == shape.length) {
+			double value = getDouble(buffer, index);
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				json.append("null");
+			} else if (FLOAT64.equals(dtype)) {
+				json.append(value);
+			} else if (INT32.equals(dtype) || INT64.equals(dtype) || (INT8.equals(dtype) && scale == 0)) {
+				json.append((long) value);
+			} else {
+				json.append((float) value);
+			}
+			return index + 1;
+		}
+		json.append('[');
+		for (int i = 0; i < shape[dim]; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			index = appendJSON(json, buffer, dim + 1, index);
+		}
+		json.append(']');
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return "Tensor[" + dtype + ", " + Arrays.toString(shape) + "]";
+	}
+}
@@ -0,0 +1,456 @@
+package rpc;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the requests and responses of proxies to an append-only binary log, for replaying production traffic
+ * with {@link TrafficReplay}. Set with {@link RpcProxy#setRecorder(TrafficRecorder)}, may be shared by proxies.
+ *
+ * The log is written through memory-mapped regions of the file. A call reserves its record by advancing the
+ * position of the region atomically and copies the frames into the mapped memory, without locks and system
+ * calls; only mapping the next region when one is full is locked. The operating system writes the pages to
+ * the file, also if the JVM crashes. The stream proxy records the frames as sent and received, tensors as the
+ * raw bytes of their attachments.
+ *
+ * Log format (big endian): the magic number {@link #MAGIC}, followed by records
+ * <pre>
+ * int    length of the record following this field
+ * long   timestamp of the request [ms since the epoch]
+ * long   latency [ns]
+ * int    length of the request, followed by the JSON-RPC request encoded as UTF-8
+ * int    length of the request attachments, followed by their raw bytes, see Attachments
+ * int    length of the response, followed by the JSON-RPC response encoded as UTF-8
+ * int    length of the response attachments, followed by their raw bytes
+ * </pre>
+ * A length of 0 or the end of the file ends the log, thus a record still written by a concurrent call or cut
+ * off by a crash ends it as well.
+ */
+public class TrafficRecorder implements Closeable {
+
+	/** Magic number at the start of the log, "RPC2". */
+	public static final int MAGIC = 0x52504332;
+	/** Default size of the mapped regions [bytes]. */
+	public static final int DEFAULT_REGION_SIZE = 16 << 20;
+
+	/** No attachments. */
+	private static final ByteBuffer[] NO_ATTACHMENTS = new ByteBuffer[0];
+
+	/** A recorded call. */
+	public static class Entry {
+		private final long timestamp;
+		private final long latency;
+		private final String request;
+		private final ByteBuffer requestAttachments;
+		private final String response;
+		private final ByteBuffer responseAttachments;
+
+		Entry(long timestamp, long latency, String request, ByteBuffer requestAttachments, String response,
+				ByteBuffer responseAttachments) {
+			this.timestamp = timestamp;
+			this.latency = latency;
+			this.request = request;
+			this.requestAttachments = requestAttachments;
+			this.response = response;
+			this.responseAttachments = responseAttachments;
+		}
+
+		/**
+		 * Returns the time of the request.
+		 *
+		 * @return timestamp [ms since the epoch]
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Returns the latency of the call.
+		 *
+		 * @return latency [ns]
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Returns the request. Tensors sent as attachments are placeholders, see {@link #getRequestAttachments()}.
+		 *
+		 * @return the JSON-RPC request
+		 */
+		public String getRequest() {
+			return request;
+		}
+
+		/**
+		 * Returns the raw bytes of the attachments of the request, in the order of its "attachments" headers.
+		 *
+		 * @return the attachments, empty if none
+		 */
+		public ByteBuffer getRequestAttachments() {
+			return requestAttachments.duplicate();
+		}
+
+		/**
+		 * Returns the response. Tensors received as attachments are placeholders, see
+		 * {@link #getResponseAttachments()}.
+		 *
+		 * @return the JSON-RPC response
+		 */
+		public String getResponse() {
+			return response;
+		}
+
+		/**
+		 * Returns the raw bytes of the attachments of the response, in the order of its "attachments" headers.
+		 *
+		 * @return the attachments, empty if none
+		 */
+		public ByteBuffer getResponseAttachments() {
+			return responseAttachments.duplicate();
+		}
+	}
+
+	/** A mapped region of the log. */
+	private static final class Region {
+		/** The mapped memory. */
+		final MappedByteBuffer buffer;
+		/** Position of the region in the file. */
+		final long start;
+		/** Offset of the next record, advanced beyond the capacity by calls waiting for the next region. */
+		final AtomicLong next = new AtomicLong();
+
+		Region(MappedByteBuffer buffer, long start) {
+			this.buffer = buffer;
+			this.start = start;
+		}
+	}
+
+	/** The log file. */
+	private final FileChannel channel;
+	/** Minimal size of the mapped regions [bytes]. */
+	private final int regionSize;
+	/** Lock for mapping the next region and closing. */
+	private final Object lock = new Object();
+	/** Currently mapped region, records are appended at its next offset. Null once closed. */
+	private volatile Region region;
+	/** Whether the log has been closed, guarded by lock. */
+	private boolean closed;
+
+	/**
+	 * Constructor, opens the log with regions of {@link #DEFAULT_REGION_SIZE}.
+	 *
+	 * @param file the log file, created if it does not exist, appended to otherwise
+	 * @throws IOException for IO problems or if the file is not a traffic log
+	 */
+	public TrafficRecorder(Path file) throws IOException {
+		this(file, DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file the log file, created if it does not exist, appended to otherwise
+	 * @param regionSize Size of the mapped regions [bytes]
+	 * @throws IOException for IO problems or if the file is not a traffic log
+	 */
+	public TrafficRecorder(Path file, int regionSize) throws IOException {
+		this.regionSize = regionSize;
+		long end = Files.exists(file) && Files.size(file) > 0 ? endOfLog(file) : 0;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			Region first = map(end, 4);
+			if (end == 0) {
+				first.buffer.putInt(0, MAGIC);
+				first.next.set(4);
+			}
+			region = first;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends a call without attachments to the log.
+	 *
+	 * @param timestamp time of the request [ms since the epoch]
+	 * @param latency latency of the call [ns]
+	 * @param request the JSON-RPC request
+	 * @param response the JSON-RPC response
+	 * @throws IOException for IO problems
+	 */
+	public void record(long timestamp, long latency, String request, String response) throws IOException {
+		record(timestamp, latency, request, NO_ATTACHMENTS, response, NO_ATTACHMENTS);
+	}
+
+	/**
+	 * Appends a call to the log. Thread-safe, concurrent calls are recorded in parallel.
+	 *
+	 * @param timestamp time of the request [ms since the epoch]
+	 * @param latency latency of the call [ns]
+	 * @param request the JSON-RPC request as sent
+	 * @param requestAttachments raw bytes of the attachments of the request, from position to limit
+	 * @param response the JSON-RPC response as received
+	 * @param responseAttachments raw bytes of the attachments of the response, from position to limit
+	 * @throws IOException for IO problems or if the recorder has been closed
+	 */
+	public void record(long timestamp, long latency, CharSequence request, ByteBuffer[] requestAttachments,
+			CharSequence response, ByteBuffer[] responseAttachments) throws IOException {
+		int requestLength = FrameChannel.utf8Length(request);
+		long requestAttachmentsLength = remaining(requestAttachments);
+		int responseLength = FrameChannel.utf8Length(response);
+		long responseAttachmentsLength = remaining(responseAttachments);
+		long size = 4 + 8 + 8 + 4 + requestLength + 4 + requestAttachmentsLength + 4 + responseLength + 4
+				+ responseAttachmentsLength;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Record too large: " + size + " bytes");
+		}
+		ByteBuffer slot = reserve((int) size);
+		int start = slot.position();
+		slot.position(start + 4);
+		slot.putLong(timestamp);
+		slot.putLong(latency);
+		slot.putInt(requestLength);
+		encode(request, slot);
+		slot.putInt((int) requestAttachmentsLength);
+		put(requestAttachments, slot);
+		slot.putInt(responseLength);
+		encode(response, slot);
+		slot.putInt((int) responseAttachmentsLength);
+		put(responseAttachments, slot);
+		// Written last, such that a record not yet complete ends the log
+		slot.putInt(start, (int) size - 4);
+	}
+
+	/**
+	 * Reserves a record of the size in the current region, or in the next region if it does not fit.
+	 *
+	 * @return a buffer positioned at the record
+	 */
+	private ByteBuffer reserve(int size) throws IOException {
+		while (true) {
+			Region current = region;
+			if (current == null) {
+				throw new IOException("Recorder closed");
+			}
+			long offset = current.next.getAndAdd(size);
+			int capacity = current.buffer.capacity();
+			if (offset + size <= capacity) {
+				ByteBuffer slot = current.buffer.duplicate();
+				slot.position((int) offset);
+				return slot;
+			}
+			if (offset <= capacity) {
+				// The first record not fitting ends the region, the next region starts at its offset
+				return roll(current, offset, size);
+			}
+			// Another call is mapping the next region
+			synchronized (lock) {
+				while (region == current) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting for the next region");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps the region following the full one and reserves the record at its start.
+	 *
+	 * @param full the full region
+	 * @param offset offset in the full region the next region starts at
+	 * @param size size of the record
+	 * @return a buffer positioned at the record
+	 */
+	private ByteBuffer roll(Region full, long offset, int size) throws IOException {
+		synchronized (lock) {
+			try {
+				if (region != full) {
+					throw new IOException("Recorder closed");
+				}
+				Region next;
+				try {
+					next = map(full.start + offset, size);
+				} catch (IOException e) {
+					// Ends the log after the full region
+					region = null;
+					throw e;
+				}
+				next.next.set(size);
+				region = next;
+				return next.buffer.duplicate();
+			} finally {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Maps the region starting at the position with at least the given size.
+	 */
+	private Region map(long position, int minSize) throws IOException {
+		return new Region(channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(regionSize, minSize)), position);
+	}
+
+	/**
+	 * Encodes the string as UTF-8 at the position of the buffer, unpaired surrogates as '?'.
+	 */
+	private static void encode(CharSequence string, ByteBuffer buffer) {
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, string.charAt(++i));
+					buffer.put((byte) (0xf0 | codePoint >> 18));
+					buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+					buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+					buffer.put((byte) (0x80 | codePoint & 0x3f));
+				} else {
+					buffer.put((byte) '?');
+				}
+			} else {
+				buffer.put((byte) (0xe0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+				buffer.put((byte) (0x80 | c & 0x3f));
+			}
+		}
+	}
+
+	private static long remaining(ByteBuffer[] buffers) {
+		long remaining = 0;
+		for (ByteBuffer buffer : buffers) {
+			remaining += buffer.remaining();
+		}
+		return remaining;
+	}
+
+	private static void put(ByteBuffer[] buffers, ByteBuffer slot) {
+		for (ByteBuffer buffer : buffers) {
+			slot.put(buffer.duplicate());
+		}
+	}
+
+	/**
+	 * Returns the position after the last complete record of an existing log.
+	 */
+	private static long endOfLog(Path file) throws IOException {
+		FileChannel log = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer field = ByteBuffer.allocate(4);
+			if (log.read(field, 0) < 4 || field.getInt(0) != MAGIC) {
+				throw new IOException("Not a traffic log: " + file);
+			}
+			long end = 4;
+			long size = log.size();
+			while (end + 4 <= size) {
+				field.clear();
+				log.read(field, end);
+				int length = field.getInt(0);
+				if (length == 0 || end + 4 + length > size) {
+					break;
+				}
+				end += 4 + length;
+			}
+			return end;
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Reads all calls of a log.
+	 *
+	 * @param file the log file
+	 * @return the calls in the order they were recorded
+	 * @throws IOException for IO problems or if the file is not a traffic log
+	 */
+	public static List<Entry> read(Path file) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		InputStream in = new BufferedInputStream(Files.newInputStream(file));
+		try {
+			DataInputStream data = new DataInputStream(in);
+			if (data.readInt() != MAGIC) {
+				throw new IOException("Not a traffic log: " + file);
+			}
+			while (data.readInt() != 0) {
+				long timestamp = data.readLong();
+				long latency = data.readLong();
+				String request = readString(data);
+				ByteBuffer requestAttachments = readBytes(data);
+				String response = readString(data);
+				entries.add(new Entry(timestamp, latency, request, requestAttachments, response, readBytes(data)));
+			}
+			return entries;
+		} catch (EOFException e) {
+			// End of the log, or a record cut off by a crash
+			return entries;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String readString(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer readBytes(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Closes the log and truncates the unused part of the last region. Calls recorded concurrently may be lost.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			Region last = region;
+			region = null;
+			lock.notifyAll();
+			try {
+				if (last != null) {
+					last.buffer.force();
+					// Beyond the capacity if calls wait for the next region, the zeros after the last record end the log
+					channel.truncate(last.start + Math.min(last.next.get(), last.buffer.capacity()));
+				}
+			} catch (IOException e) {
+				// e.g. on Windows while the region is still mapped, the zeros after the last record end the log
+				RpcProxy.sLog.fine("Could not truncate traffic log: " + e.getMessage());
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package rpc;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParseException;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import net.minidev.json.JSONValue;
+
+/**
+ * Replays a log recorded by {@link TrafficRecorder} against an endpoint and reports the latency differences
+ * per function, e.g. to evaluate a new model or client version with production traffic.
+ *
+ * Each call is sent at its recorded time, relative to the first call and scaled by a speed factor, by a pool
+ * of threads, thus calls which overlapped when recorded overlap when replayed and the endpoint sees the
+ * recorded load. A call due while all threads are busy is sent as soon as one is free and counts as lag. At
+ * {@link #MAX_SPEED} the calls are sent as fast as the threads allow. The proxy must support concurrent calls
+ * to reproduce the load, e.g. a {@link JsonRpcStreamProxy} with a shared connection.
+ * Calls of a session are recorded with their full parameters, thus they are replayed without session.
+ *
+ * Call: java rpc.TrafficReplay traffic.log jsonrpc2://localhost:2102 [original|max|speed factor, e.g. 2]
+ */
+public class TrafficReplay {
+
+	/** Speed replaying the calls without pauses. */
+	public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+	/** Default maximal number of concurrent calls. */
+	public static final int DEFAULT_CONCURRENCY = 64;
+
+	/** Latencies of the calls of a function. */
+	private static class Latencies {
+		final List<Long> recorded = new ArrayList<Long>();
+		final List<Long> replayed = new ArrayList<Long>();
+	}
+
+	/** The proxy of the endpoint. */
+	private final RpcProxy proxy;
+	/** Speed factor, 1 for the original pace. */
+	private final double speed;
+	/** Maximal number of concurrent calls. */
+	private final int concurrency;
+	/** Latencies by function, guarded by this. */
+	private final Map<String, Latencies> latencies = new TreeMap<String, Latencies>();
+	/** Number of failed calls, guarded by this. */
+	private int failures;
+	/** Number of calls with a result different from the recorded one, guarded by this. */
+	private int differentResults;
+	/** Maximal delay of a call behind its schedule [ns], guarded by this. */
+	private long maxLag;
+
+	/**
+	 * Constructor, replays up to {@link #DEFAULT_CONCURRENCY} calls concurrently.
+	 *
+	 * @param proxy the proxy of the endpoint, set up
+	 * @param speed Speed factor, 1 for the original pace, 2 for twice as fast, {@link #MAX_SPEED} without pauses
+	 */
+	public TrafficReplay(RpcProxy proxy, double speed) {
+		this(proxy, speed, DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param proxy the proxy of the endpoint, set up
+	 * @param speed Speed factor, 1 for the original pace, 2 for twice as fast, {@link #MAX_SPEED} without pauses
+	 * @param concurrency Maximal number of concurrent calls
+	 */
+	public TrafficReplay(RpcProxy proxy, double speed, int concurrency) {
+		this.proxy = proxy;
+		this.speed = speed;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Replays the calls and waits until all have completed.
+	 *
+	 * @param entries the recorded calls, in any order, calls are logged as they complete
+	 * @throws InterruptedException if interrupted while waiting, the running calls are interrupted as well
+	 */
+	public void replay(List<TrafficRecorder.Entry> entries) throws InterruptedException {
+		if (entries.isEmpty()) {
+			return;
+		}
+		entries = new ArrayList<TrafficRecorder.Entry>(entries);
+		Collections.sort(entries, new Comparator<TrafficRecorder.Entry>() {
+			@Override
+			public int compare(TrafficRecorder.Entry a, TrafficRecorder.Entry b) {
+				return Long.compare(a.getTimestamp(), b.getTimestamp());
+			}
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			long firstTimestamp = entries.get(0).getTimestamp();
+			long start = System.nanoTime();
+			for (final TrafficRecorder.Entry entry : entries) {
+				final long due = start + (speed == MAX_SPEED ? 0 : (long) ((entry.getTimestamp() - firstTimestamp) * 1e6 / speed));
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						call(entry, due);
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sends the recorded request and compares latency and result with the recorded call.
+	 *
+	 * @param due time the call is due [ns, see System.nanoTime()]
+	 */
+	private void call(TrafficRecorder.Entry entry, long due) {
+		String method = "?";
+		try {
+			JSONRPC2Request request = request(entry);
+			method = request.getMethod();
+			long start = System.nanoTime();
+			JSONRPC2Response response = proxy.invoke(request);
+			long latency = System.nanoTime() - start;
+			JSONRPC2Response recorded = response(entry);
+			boolean different = !JSONValue.toJSONString(response.getResult()).equals(JSONValue.toJSONString(recorded.getResult()))
+					|| response.indicatesSuccess() != recorded.indicatesSuccess();
+			completed(method, entry.getLatency(), latency, start - due, different);
+		} catch (Exception e) {
+			synchronized (this) {
+				failures++;
+			}
+			RpcProxy.sLog.warning("Replay of " + method + " failed: " + e);
+		}
+	}
+
+	private synchronized void completed(String method, long recordedLatency, long latency, long lag, boolean different) {
+		Latencies function = latencies.get(method);
+		if (function == null) {
+			function = new Latencies();
+			latencies.put(method, function);
+		}
+		function.recorded.add(recordedLatency);
+		function.replayed.add(latency);
+		if (speed != MAX_SPEED) {
+			maxLag = Math.max(maxLag, lag);
+		}
+		if (different) {
+			differentResults++;
+		}
+	}
+
+	/**
+	 * Decodes the recorded request with the tensors of its attachments, without non standard attributes, e.g. an
+	 * expired "deadline" of the recording.
+	 *
+	 * @param entry the recorded call
+	 * @return the request
+	 * @throws JSONRPC2ParseException if the request is invalid
+	 */
+	@SuppressWarnings("unchecked")
+	static JSONRPC2Request request(TrafficRecorder.Entry entry) throws JSONRPC2ParseException {
+		JSONRPC2Request recorded = JSONRPC2Request.parse(entry.getRequest(), false, true, true);
+		List<Tensor> tensors = Attachments.tensors(recorded.getNonStdAttribute("attachments"), entry.getRequestAttachments());
+		if (recorded.getPositionalParams() != null) {
+			return new JSONRPC2Request(recorded.getMethod(),
+					(List<Object>) Attachments.resolve(recorded.getPositionalParams(), tensors), recorded.getID());
+		} else if (recorded.getNamedParams() != null) {
+			return new JSONRPC2Request(recorded.getMethod(),
+					(Map<String, Object>) Attachments.resolve(recorded.getNamedParams(), tensors), recorded.getID());
+		}
+		return new JSONRPC2Request(recorded.getMethod(), recorded.getID());
+	}
+
+	/**
+	 * Decodes the recorded response with the tensors of its attachments.
+	 *
+	 * @param entry the recorded call
+	 * @return the response
+	 * @throws JSONRPC2ParseException if the response is invalid
+	 */
+	static JSONRPC2Response response(TrafficRecorder.Entry entry) throws JSONRPC2ParseException {
+		JSONRPC2Response recorded = JSONRPC2Response.parse(entry.getResponse(), false, true, true);
+		List<Tensor> tensors = Attachments.tensors(recorded.getNonStdAttribute("attachments"), entry.getResponseAttachments());
+		if (recorded.indicatesSuccess() && !tensors.isEmpty()) {
+			recorded.setResult(Attachments.resolve(recorded.getResult(), tensors));
+		}
+		return recorded;
+	}
+
+	/**
+	 * Prints the latency percentiles per function of the recording and the replay, and their differences.
+	 *
+	 * @param out the output
+	 */
+	public synchronized void report(PrintStream out) {
+		out.println(String.format("%-24s %7s %21s %21s %21s", "function", "calls",
+				"recorded p50/p99 ms", "replayed p50/p99 ms", "difference p50/p99"));
+		for (Map.Entry<String, Latencies> function : latencies.entrySet()) {
+			long[] recorded = sorted(function.getValue().recorded);
+			long[] replayed = sorted(function.getValue().replayed);
+			out.println(String.format("%-24s %7d %10.3f %10.3f %10.3f %10.3f %+9.1f%% %+9.1f%%", function.getKey(),
+					replayed.length, millis(percentile(recorded, 0.5)), millis(percentile(recorded, 0.99)),
+					millis(percentile(replayed, 0.5)), millis(percentile(replayed, 0.99)),
+					difference(percentile(recorded, 0.5), percentile(replayed, 0.5)),
+					difference(percentile(recorded, 0.99), percentile(replayed, 0.99))));
+		}
+		out.println("Failed calls: " + failures + ", different results: " + differentResults
+				+ ", max. lag behind schedule: " + String.format("%.3f", millis(maxLag)) + "ms");
+	}
+
+	/**
+	 * Returns the number of failed calls.
+	 *
+	 * @return number of failed calls
+	 */
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns the number of calls whose result differs from the recorded one.
+	 *
+	 * @return number of calls with different results
+	 */
+	public synchronized int getDifferentResults() {
+		return differentResults;
+	}
+
+	private static long[] sorted(List<Long> values) {
+		long[] array = new long[values.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		Arrays.sort(array);
+		return array;
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+	}
+
+	private static double difference(long recorded, long replayed) {
+		return recorded > 0 ? 100.0 * (replayed - recorded) / recorded : 0;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * Replays a log.
+	 *
+	 * @param args log file, server URL, speed: original (default), max or a factor
+	 * @throws Throwable for any problems
+	 */
+	public static void main(String... args) throws Throwable {
+		if (args.length < 2) {
+			System.out.println("Usage: java rpc.TrafficReplay traffic.log jsonrpc2://localhost:2102 [original|max|speed factor]");
+			System.exit(1);
+		}
+		List<TrafficRecorder.Entry> entries = TrafficRecorder.read(Paths.get(args[0]));
+		String speed = args.length > 2 ? args[2] : "original";
+		Controller controller = new Controller();
+		boolean stream = !args[1].startsWith("http");
+		if (stream) {
+			// Overlapping calls are multiplexed instead of waiting for the connection
+			controller.setSharedConnection(true);
+		}
+		controller.setupRpc(stream ? Controller.RpcType.JSON_STREAM : Controller.RpcType.JSON, args[1], "ping", 10000, 0, 0);
+		try {
+			TrafficReplay replay = new TrafficReplay(controller.getRpcProxy(),
+					"original".equals(speed) ? 1 : "max".equals(speed) ? MAX_SPEED : Double.parseDouble(speed));
+			System.out.println("Replay " + entries.size() + " calls at " + speed + " speed against " + args[1]);
+			replay.replay(entries);
+			replay.report(System.out);
+		} finally {
+			controller.closeResources();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package rpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+/**
+ * Warm-up phase run by {@link Controller#setupRpc(Controller.RpcType, String, String, int, int, int)}.
+ *
+ * The warm-up calls are repeated on every connection until the latency is stable, i.e. the mean latency of the
+ * last window of rounds differs less than the tolerance from the window before. This way the JIT compilation on
+ * the Java side and lazy initializations on the Python side (e.g. loading a model) happen before the first real request.
+ *
+ * @see Controller#setWarmupPolicy(WarmupPolicy)
+ */
+public class WarmupPolicy {
+
+	/** A warm-up call. */
+	private static class WarmupCall {
+		final String method;
+		final List<Object> params;
+
+		WarmupCall(String method, List<Object> params) {
+			this.method = method;
+			this.params = params;
+		}
+	}
+
+	/** The warm-up calls of one round. */
+	private final List<WarmupCall> calls = new ArrayList<WarmupCall>();
+	/** Number of rounds per window. */
+	private final int window;
+	/** Maximal relative difference of the mean latency of two consecutive windows. */
+	private final double tolerance;
+	/** Maximal number of rounds. */
+	private final int maxRounds;
+	/** Maximal duration of the warm-up per connection [ms]. */
+	private final long maxDuration;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param window Number of rounds per window, e.g. 50
+	 * @param tolerance Relative difference of the mean latency of two consecutive windows considered stable, e.g. 0.1
+	 * @param maxRounds Maximal number of rounds
+	 * @param maxDuration Maximal duration of the warm-up per connection [ms]
+	 */
+	public WarmupPolicy(int window, double tolerance, int maxRounds, long maxDuration) {
+		this.window = window;
+		this.tolerance = tolerance;
+		this.maxRounds = maxRounds;
+		this.maxDuration = maxDuration;
+	}
+
+	/**
+	 * Adds a call to the warm-up round. If no call is added, "ping" is called.
+	 *
+	 * @param method name of the RPC function, e.g. keras_test_numpy
+	 * @param params positional parameters of the function
+	 * @return this policy
+	 */
+	public WarmupPolicy addCall(String method, Object... params) {
+		calls.add(new WarmupCall(method, Arrays.asList(params)));
+		return this;
+	}
+
+	/**
+	 * Runs the warm-up on the connection of the proxy.
+	 *
+	 * @param proxy the RPC proxy
+	 * @return number of rounds run
+	 * @throws Exception for problems or if a warm-up call fails
+	 */
+	public int run(RpcProxy proxy) throws Exception {
+		List<WarmupCall> round = calls.isEmpty()
+				? Arrays.asList(new WarmupCall("ping", new ArrayList<Object>()))
+				: calls;
+		long[] latencies = new long[maxRounds];
+		long start = System.currentTimeMillis();
+		int rounds = 0;
+		while (rounds < maxRounds && System.currentTimeMillis() - start < maxDuration) {
+			long roundStart = System.nanoTime();
+			for (WarmupCall call : round) {
+				JSONRPC2Response response = proxy.invoke(new JSONRPC2Request(call.method, call.params, "warmup"));
+				if (!response.indicatesSuccess()) {
+					throw new Exception("Warm-up call " + call.method + " failed: " + response.getError());
+				}
+			}
+			latencies[rounds++] = System.nanoTime() - roundStart;
+			if (rounds >= 2 * window && isStable(latencies, rounds)) {
+				break;
+			}
+		}
+		return rounds;
+	}
+
+	private boolean isStable(long[] latencies, int rounds) {
+		double previous = mean(latencies, rounds - 2 * window, rounds - window);
+		double last = mean(latencies, rounds - window, rounds);
+		return Math.abs(last - previous) <= tolerance * previous;
+	}
+
+	private static double mean(long[] values, int from, int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += values[i];
+		}
+		return sum / (to - from);
+	}
+}
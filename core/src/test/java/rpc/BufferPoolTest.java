@@ -0,0 +1,51 @@
+package rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Reuse of pooled and oversize buffers.
+ */
+public class BufferPoolTest {
+
+	@Test
+	public void reusesBuffersOfSizeClass() {
+		BufferPool pool = new BufferPool(12, 16, 4);
+		ByteBuffer buffer = pool.acquire(5000);
+		assertEquals(8192, buffer.capacity());
+		buffer.putInt(1);
+		pool.release(buffer);
+		ByteBuffer reused = pool.acquire(8000);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+	}
+
+	@Test
+	public void reusesOversizeBuffers() {
+		BufferPool pool = new BufferPool(12, 16, 4, 1);
+		ByteBuffer buffer = pool.acquire(100000);
+		assertEquals(131072, buffer.capacity());
+		pool.release(buffer);
+		assertSame(buffer, pool.acquire(70000));
+		// Only one free buffer is kept per oversize class
+		ByteBuffer second = pool.acquire(70000);
+		pool.release(buffer);
+		pool.release(second);
+		assertSame(buffer, pool.acquire(70000));
+		assertNotSame(second, pool.acquire(70000));
+	}
+
+	@Test
+	public void allocatesOversizeBuffersWithoutOversizeClasses() {
+		BufferPool pool = new BufferPool(12, 16, 4);
+		ByteBuffer buffer = pool.acquire(100000);
+		assertEquals(100000, buffer.capacity());
+		pool.release(buffer);
+		assertNotSame(buffer, pool.acquire(100000));
+	}
+}
@@ -0,0 +1,135 @@
+package rpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import net.minidev.json.JSONObject;
+
+/**
+ * Deltas of the parameters of session calls, and their base after written and failed requests.
+ */
+public class DeltaEncoderTest {
+
+	private static Map<String, Object> map(Object... entries) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		for (int i = 0; i < entries.length; i += 2) {
+			map.put((String) entries[i], entries[i + 1]);
+		}
+		return map;
+	}
+
+	@Test
+	public void committedCallIsBaseOfNextDelta() {
+		DeltaEncoder encoder = new DeltaEncoder(map("model", "m1"));
+		Map<String, Object> parameters = map("a", 1L, "b", "x");
+		assertEquals(map("a", 1L, "b", "x"), encoder.encode("f", parameters));
+		encoder.commit();
+		parameters.put("a", 2L);
+		assertEquals(map("a", 2L), encoder.encode("f", parameters));
+		encoder.commit();
+		assertTrue(encoder.encode("f", parameters).isEmpty());
+		// Other functions have their own base
+		assertEquals(map("a", 2L, "b", "x"), encoder.encode("g", parameters));
+	}
+
+	@Test
+	public void discardedCallIsNotBaseOfNextDelta() {
+		DeltaEncoder encoder = new DeltaEncoder(map());
+		Map<String, Object> parameters = map("a", 1L);
+		encoder.encode("f", parameters);
+		encoder.commit();
+		parameters.put("a", 2L);
+		encoder.encode("f", parameters);
+		// The request has not been written, the server still has a = 1
+		encoder.discard();
+		encoder.commit();
+		assertEquals(map("a", 2L), encoder.encode("f", parameters));
+	}
+
+	@Test
+	public void listsRemovedKeys() {
+		DeltaEncoder encoder = new DeltaEncoder(map("model", "m1"));
+		encoder.encode("f", map("a", 1L, "b", 2L, "model", "m2"));
+		encoder.commit();
+		JSONObject delta = encoder.encode("f", map("a", 1L));
+		assertEquals(Arrays.asList("b"), delta.get(DeltaEncoder.REMOVED));
+		// The overridden session parameter is restored instead of removed
+		assertEquals("m1", delta.get("model"));
+		assertEquals(2, delta.size());
+	}
+
+	@Test
+	public void sendsChangedNestedValuesInFull() {
+		DeltaEncoder encoder = new DeltaEncoder(map());
+		List<Object> steps = new ArrayList<Object>(Arrays.asList((Object) 1L, 2L));
+		Map<String, Object> options = map("mode", "fast", "limits", new ArrayList<Object>(Arrays.asList((Object) 3L)));
+		Tensor tensor = Tensor.of(new float[] { 1, 2, 3 });
+		Map<String, Object> parameters = map("steps", steps, "options", options, "tensor", tensor);
+		encoder.encode("f", parameters);
+		encoder.commit();
+		assertTrue(encoder.encode("f", parameters).isEmpty());
+		encoder.commit();
+
+		// Modified in place, detected against the snapshot of the previous call
+		steps.set(1, 5L);
+		@SuppressWarnings("unchecked")
+		List<Object> limits = (List<Object>) options.get("limits");
+		limits.add(4L);
+		JSONObject delta = encoder.encode("f", parameters);
+		assertEquals(2, delta.size());
+		assertEquals(Arrays.asList((Object) 1L, 5L), delta.get("steps"));
+		assertSame(options, delta.get("options"));
+		encoder.commit();
+
+		Tensor changed = Tensor.of(new float[] { 1, 2, 4 });
+		parameters.put("tensor", changed);
+		delta = encoder.encode("f", parameters);
+		assertEquals(1, delta.size());
+		assertSame(changed, delta.get("tensor"));
+		encoder.commit();
+		parameters.put("tensor", Tensor.of(new float[] { 1, 2, 4 }));
+		assertTrue(encoder.encode("f", parameters).isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void sendsChangedElementsOfArrays() {
+		DeltaEncoder encoder = new DeltaEncoder(map());
+		float[] feature = new float[8];
+		int[] counts = new int[4];
+		Map<String, Object> parameters = map("feature", feature, "counts", counts);
+		encoder.encode("f", parameters);
+		encoder.commit();
+
+		// 3 of 8 changed: sent as delta
+		feature[1] = 1;
+		feature[5] = 2;
+		feature[7] = 3;
+		// 2 of 4 changed: not fewer than half, sent in full
+		counts[0] = 1;
+		counts[3] = 1;
+		JSONObject delta = encoder.encode("f", parameters);
+		Map<String, Object> elements = (Map<String, Object>) ((Map<String, Object>) delta.get("feature")).get(DeltaEncoder.DELTA);
+		assertEquals(Arrays.asList(1, 5, 7), elements.get("index"));
+		assertEquals(Arrays.asList(1f, 2f, 3f), elements.get("value"));
+		assertArrayEquals(counts, (int[]) delta.get("counts"));
+		encoder.commit();
+
+		// Arrays of another length are sent in full
+		parameters.put("feature", new float[] { 1 });
+		delta = encoder.encode("f", parameters);
+		assertTrue(delta.get("feature") instanceof float[]);
+		assertFalse(delta.containsKey("counts"));
+	}
+}
@@ -0,0 +1,71 @@
+package rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Frames encoded into buffers sized by their UTF-8 length, and writes to a peer which does not read.
+ */
+public class FrameChannelTest {
+
+	@Test
+	public void encodesFramesFillingTheirBuffers() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			FrameChannel channel = new FrameChannel("localhost", server.getLocalPort(), 5000, 5000, new BufferPool(6, 12, 4));
+			try (Socket peer = server.accept()) {
+				// 2 + 30 * 2 + 1 bytes, with EOL the full 64 bytes of the smallest class, and 4 byte chars
+				StringBuilder frame = new StringBuilder("\"\"");
+				for (int i = 0; i < 30; i++) {
+					frame.insert(1, '\u00e4');
+				}
+				frame.insert(1, 'x');
+				String surrogates = "\"" + new String(Character.toChars(0x1f600)) + "\u20ac\"";
+				channel.writeFrames(Arrays.asList(frame, surrogates), Arrays.asList(new ByteBuffer[0], new ByteBuffer[0]));
+				channel.writeFrame(frame);
+				BufferedReader in = new BufferedReader(new InputStreamReader(peer.getInputStream(), StandardCharsets.UTF_8));
+				assertEquals(frame.toString(), in.readLine());
+				assertEquals(surrogates, in.readLine());
+				assertEquals(frame.toString(), in.readLine());
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void closesConnectionWhenWriteStalls() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			FrameChannel channel = new FrameChannel("localhost", server.getLocalPort(), 5000, 200, BufferPool.SHARED);
+			try (Socket idle = server.accept()) {
+				// More than the socket buffers of both sides hold
+				ByteBuffer attachment = ByteBuffer.allocateDirect(64 << 20);
+				try {
+					channel.writeFrame("{}", new ByteBuffer[] { attachment });
+					fail("Write not stalled");
+				} catch (SocketTimeoutException e) {
+					// Expected, the peer does not read
+				}
+				try {
+					channel.writeFrame("{}");
+					fail("Connection not closed");
+				} catch (ClosedChannelException e) {
+					// Expected, the partially written frame has been given up with the connection
+				}
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+/**
+ * Recovery of the stream proxy from responses whose attachments are not received completely.
+ */
+public class JsonRpcStreamProxyTest {
+
+	private StallingServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new StallingServer();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void reconnectsAfterIncompleteAttachment() throws Exception {
+		JsonRpcStreamProxy proxy = new JsonRpcStreamProxy(
+				JsonRpcStreamProxy.parseURL("jsonrpc2://localhost:" + server.getPort()), "f", 5000, 5000, 0);
+		try {
+			proxy.invoke(new JSONRPC2Request("stall", 1), System.currentTimeMillis() + 300);
+			fail("Deadline not exceeded");
+		} catch (SocketTimeoutException e) {
+			// Expected, the attachment is incomplete
+		}
+		JSONRPC2Response response = proxy.invoke(new JSONRPC2Request("f", 2));
+		assertEquals(2L, ((Number) response.getID()).longValue());
+		assertEquals("ok", response.getResult());
+		assertEquals(2, server.connections.get());
+		proxy.disconnectProxy();
+	}
+
+	@Test
+	public void sharedConnectionReconnectsAfterIncompleteAttachment() throws Exception {
+		JsonRpcStreamProxy proxy = new JsonRpcStreamProxy(
+				JsonRpcStreamProxy.parseURL("jsonrpc2://localhost:" + server.getPort()), "f", 5000, 300, 0);
+		proxy.setSharedConnection(true);
+		try {
+			proxy.invoke(new JSONRPC2Request("stall", 1), System.currentTimeMillis() + 2000);
+			fail("Connection not failed");
+		} catch (IOException e) {
+			// Expected, the attachment is incomplete
+		}
+		// The call may time out just before the reader gives up the attachment and fails the connection, a call
+		// sent meanwhile would fail along with it
+		Thread.sleep(300);
+		JSONRPC2Response response = proxy.invoke(new JSONRPC2Request("f", 2));
+		assertEquals("ok", response.getResult());
+		assertEquals(2, server.connections.get());
+		proxy.disconnectProxy();
+	}
+
+	/**
+	 * Stream server answering "stall" with a response whose attachment is sent partially, and other methods with "ok".
+	 */
+	private static class StallingServer implements Runnable {
+
+		private final ServerSocket socket = new ServerSocket(0);
+		/** Number of accepted connections. */
+		final AtomicInteger connections = new AtomicInteger();
+
+		StallingServer() throws IOException {
+			Thread thread = new Thread(this, "StallingServer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return socket.getLocalPort();
+		}
+
+		@Override
+		public void run() {
+			while (!socket.isClosed()) {
+				try {
+					final Socket connection = socket.accept();
+					connections.incrementAndGet();
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							serve(connection);
+						}
+					});
+					thread.setDaemon(true);
+					thread.start();
+				} catch (IOException e) {
+					// Closed
+				}
+			}
+		}
+
+		private void serve(Socket connection) {
+			try (Socket closed = connection) {
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+				OutputStream out = connection.getOutputStream();
+				String line;
+				while ((line = in.readLine()) != null && !line.isEmpty()) {
+					JSONRPC2Request request;
+					try {
+						request = JSONRPC2Request.parse(line, false, true, true);
+					} catch (Exception e) {
+						// Notification, e.g. cancel
+						continue;
+					}
+					if ("stall".equals(request.getMethod())) {
+						out.write(("{\"jsonrpc\":\"2.0\",\"id\":" + request.getID() + ",\"result\":{\"$tensor\":0},"
+								+ "\"attachments\":[{\"dtype\":\"float32\",\"shape\":[4],\"order\":\"<\",\"nbytes\":16}]}\n")
+										.getBytes(StandardCharsets.UTF_8));
+						out.write(new byte[4]);
+					} else {
+						out.write((new JSONRPC2Response("ok", request.getID()).toString() + "\n").getBytes(StandardCharsets.UTF_8));
+					}
+					out.flush();
+				}
+			} catch (IOException e) {
+				// Closed by the client
+			}
+		}
+
+		void close() throws IOException {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package rpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Building sparse tensors element by element.
+ */
+public class SparseTensorTest {
+
+	@Test
+	public void buildsRowsInOrder() {
+		SparseTensor sparse = SparseTensor.builder(4, 3).add(0, 1, 1).add(0, 2, 2).add(2, 0, 3).build();
+		assertEquals(3, sparse.nnz());
+		assertArrayEquals(new double[] { 0, 2, 2, 3, 3 }, sparse.getIndptr().toDoubleArray(), 0);
+		assertArrayEquals(new double[] { 1, 2, 0 }, sparse.getIndices().toDoubleArray(), 0);
+		assertArrayEquals(new float[][] { { 0, 1, 2 }, { 0, 0, 0 }, { 3, 0, 0 }, { 0, 0, 0 } }, sparse.toDense());
+		// The first element may be in any row
+		assertArrayEquals(new double[] { 0, 0, 0, 1 }, SparseTensor.builder(3, 3).add(2, 2, 1).build().getIndptr()
+				.toDoubleArray(), 0);
+	}
+
+	@Test
+	public void rejectsDuplicateElements() {
+		assertRejected(SparseTensor.builder(2, 3).add(0, 0, 1), 0, 0, "added twice");
+		assertRejected(SparseTensor.builder(2, 3).add(0, 1, 1).add(1, 2, 1), 1, 2, "added twice");
+	}
+
+	@Test
+	public void rejectsElementsOutOfOrder() {
+		assertRejected(SparseTensor.builder(2, 3).add(0, 2, 1), 0, 1, "row-major order");
+		assertRejected(SparseTensor.builder(3, 3).add(1, 0, 1), 0, 2, "row-major order");
+		assertRejected(SparseTensor.builder(3, 3).add(2, 1, 1).add(2, 2, 1), 2, 0, "row-major order");
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsElementsOutsideOfShape() {
+		SparseTensor.builder(2, 3).add(0, 3, 1);
+	}
+
+	private static void assertRejected(SparseTensor.Builder builder, int row, int col, String reason) {
+		try {
+			builder.add(row, col, 1);
+			fail("Element [" + row + ", " + col + "] accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(reason));
+		}
+	}
+}
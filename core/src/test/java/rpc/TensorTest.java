@@ -0,0 +1,87 @@
+package rpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.minidev.json.JSONValue;
+
+/**
+ * Reduced precision encodings of float tensors and their JSON encoding.
+ */
+public class TensorTest {
+
+	private static float[] roundTrip(String dtype, float... values) {
+		Tensor tensor = Tensor.of(values, dtype);
+		// Decoded from the header and raw bytes as received, like an attachment
+		Object headers = JSONValue.parse(Attachments.headers(Arrays.asList(tensor)).toJSONString());
+		List<Tensor> received = Attachments.tensors(headers, tensor.getData());
+		return received.get(0).toFloatArray();
+	}
+
+	@Test
+	public void float16RoundsToNearestEven() {
+		float ulp = 0x1p-10f;
+		assertArrayEquals(new float[] { 1, 1 + 2 * ulp, 1 + ulp, 1 + ulp, -1 }, roundTrip(Tensor.FLOAT16,
+				1 + ulp / 2, 1 + 3 * ulp / 2, 1 + ulp * 0.6f, 1 + ulp * 1.4f, -1 - ulp / 2), 0);
+	}
+
+	@Test
+	public void float16SubnormalsAndOverflow() {
+		float min = 0x1p-24f;
+		assertArrayEquals(new float[] { 0, 2 * min, min, 65504, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY },
+				roundTrip(Tensor.FLOAT16, min / 2, 3 * min / 2, min * 0.75f, 65519, 65520, -1e6f), 0);
+		float[] special = roundTrip(Tensor.FLOAT16, Float.NaN, Float.POSITIVE_INFINITY);
+		assertTrue(Float.isNaN(special[0]));
+		assertEquals(Float.POSITIVE_INFINITY, special[1], 0);
+	}
+
+	@Test
+	public void bfloat16RoundsToNearestEven() {
+		float ulp = 0x1p-7f;
+		assertArrayEquals(new float[] { 1, 1 + 2 * ulp, 1 + ulp, -3.140625f },
+				roundTrip(Tensor.BFLOAT16, 1 + ulp / 2, 1 + 3 * ulp / 2, 1 + ulp * 0.6f, -3.14159f), 0);
+		float[] special = roundTrip(Tensor.BFLOAT16, Float.NaN, Float.NEGATIVE_INFINITY, Float.MAX_VALUE);
+		assertTrue(Float.isNaN(special[0]));
+		assertEquals(Float.NEGATIVE_INFINITY, special[1], 0);
+		// Rounds up beyond the largest bfloat16
+		assertEquals(Float.POSITIVE_INFINITY, special[2], 0);
+	}
+
+	@Test
+	public void int8QuantizesWithScale() {
+		float[] values = { -2, 0, 0.5f, 1, 2 };
+		Tensor tensor = Tensor.of(values, Tensor.INT8);
+		assertEquals(2.0 / 127, tensor.getScale(), 1e-9);
+		float[] decoded = roundTrip(Tensor.INT8, values);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], decoded[i], tensor.getScale() / 2);
+		}
+		assertEquals(-2, decoded[0], 1e-6);
+		assertEquals(2, decoded[4], 1e-6);
+		assertArrayEquals(new float[] { 0, 0 }, roundTrip(Tensor.INT8, 0, 0), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void int8RejectsNaN() {
+		Tensor.of(new float[] { 1, Float.NaN }, Tensor.INT8);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void int8RejectsInfinity() {
+		Tensor.of(new float[] { 1, Float.NEGATIVE_INFINITY }, Tensor.INT8);
+	}
+
+	@Test
+	public void encodesNonFiniteValuesAsJsonNull() {
+		assertEquals("[[1.5,null],[null,-2.0]]",
+				Tensor.of(new float[] { 1.5f, Float.NaN, Float.POSITIVE_INFINITY, -2 }, 2, 2).toJSONString());
+		assertEquals("[null,0.25]", Tensor.of(new double[] { Double.NEGATIVE_INFINITY, 0.25 }).toJSONString());
+		assertEquals("[null,1.0]", Tensor.of(new float[] { Float.NaN, 1 }, Tensor.BFLOAT16).toJSONString());
+	}
+}
@@ -0,0 +1,110 @@
+package rpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+/**
+ * Concurrent recording across mapped regions and recording of attachments.
+ */
+public class TrafficRecorderTest {
+
+	private Path log;
+
+	@Before
+	public void setUp() throws Exception {
+		log = Files.createTempFile("traffic", ".log");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(log);
+	}
+
+	@Test
+	public void recordsConcurrentlyAcrossRegions() throws Exception {
+		final int threads = 8;
+		final int calls = 500;
+		final TrafficRecorder recorder = new TrafficRecorder(log, 1024);
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			writers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < calls; i++) {
+							recorder.record(thread, i, "{\"id\":\"" + thread + "-" + i + "\",\"text\":\"\u00e4\u20ac\"}",
+									"{\"id\":\"" + thread + "-" + i + "\"}");
+						}
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}));
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		recorder.close();
+
+		List<TrafficRecorder.Entry> entries = TrafficRecorder.read(log);
+		assertEquals(threads * calls, entries.size());
+		Set<String> ids = new HashSet<String>();
+		for (TrafficRecorder.Entry entry : entries) {
+			String id = entry.getTimestamp() + "-" + entry.getLatency();
+			assertEquals("{\"id\":\"" + id + "\",\"text\":\"\u00e4\u20ac\"}", entry.getRequest());
+			assertEquals("{\"id\":\"" + id + "\"}", entry.getResponse());
+			ids.add(id);
+		}
+		assertEquals(threads * calls, ids.size());
+	}
+
+	@Test
+	public void recordsAttachmentsForReplay() throws Exception {
+		Tensor tensor = Tensor.of(new float[] { 1, 2, 3, 4, 5 }, 5);
+		List<Tensor> tensors = Arrays.asList(tensor);
+		JSONRPC2Request request = new JSONRPC2Request("f", Arrays.asList((Object) 1L, Attachments.extract(tensor, new ArrayList<Tensor>())), 7L);
+		request.appendNonStdAttribute("attachments", Attachments.headers(tensors));
+		TrafficRecorder recorder = new TrafficRecorder(log, 64);
+		recorder.record(1, 2, request.toString(), Attachments.data(tensors), "{\"jsonrpc\":\"2.0\",\"id\":7,\"result\":null}",
+				Frame.NO_ATTACHMENTS);
+		recorder.close();
+		// Appending reopens the log at its end
+		recorder = new TrafficRecorder(log, 64);
+		recorder.record(3, 4, "{}", "{}");
+		recorder.close();
+
+		List<TrafficRecorder.Entry> entries = TrafficRecorder.read(log);
+		assertEquals(2, entries.size());
+		assertEquals(20, entries.get(0).getRequestAttachments().remaining());
+		assertEquals(0, entries.get(0).getResponseAttachments().remaining());
+		JSONRPC2Request replayed = TrafficReplay.request(entries.get(0));
+		assertEquals(null, replayed.getNonStdAttribute("attachments"));
+		assertEquals(1L, replayed.getPositionalParams().get(0));
+		Object decoded = replayed.getPositionalParams().get(1);
+		assertTrue(decoded instanceof Tensor);
+		assertArrayEquals(tensor.toFloatArray(), ((Tensor) decoded).toFloatArray(), 0);
+		assertEquals("{}", entries.get(1).getRequest());
+		ByteBuffer empty = entries.get(1).getRequestAttachments();
+		assertEquals(0, empty.remaining());
+	}
+}
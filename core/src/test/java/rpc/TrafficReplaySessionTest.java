@@ -0,0 +1,185 @@
+package rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+/**
+ * Records the calls of a session proxy and replays them on a connection without session.
+ */
+public class TrafficReplaySessionTest {
+
+	private EchoServer server;
+	private Path log;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new EchoServer();
+		log = Files.createTempFile("traffic", ".log");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+		Files.deleteIfExists(log);
+	}
+
+	@Test
+	public void replaysSessionCallsWithFullParameters() throws Exception {
+		Map<String, Object> constants = new HashMap<String, Object>();
+		constants.put("model", "m1");
+		TrafficRecorder recorder = new TrafficRecorder(log);
+		JsonRpcStreamProxy session = new JsonRpcStreamProxy(server.url(), "echo", 5000, 5000, 0);
+		session.setRecorder(recorder);
+		session.setupRpc(constants);
+		float[] feature = new float[8];
+		List<Object> steps = new ArrayList<Object>(Arrays.asList((Object) 1L, 2L));
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("feature", feature);
+		parameters.put("steps", steps);
+		parameters.put("stage", "first");
+		for (int i = 0; i < 4; i++) {
+			feature[i] = i + 1;
+			steps.set(0, (long) i);
+			if (i == 2) {
+				parameters.remove("stage");
+			}
+			session.callRemoteFunction(parameters, i);
+		}
+		session.disconnectProxy();
+		recorder.close();
+
+		List<TrafficRecorder.Entry> entries = TrafficRecorder.read(log);
+		JSONRPC2Request last = JSONRPC2Request.parse(entries.get(entries.size() - 1).getRequest(), false, true, true);
+		assertNull(last.getNonStdAttribute("session"));
+		@SuppressWarnings("unchecked")
+		Map<String, Object> recorded = (Map<String, Object>) last.getPositionalParams().get(0);
+		assertEquals(server.lastParams.keySet(), recorded.keySet());
+		assertEquals("m1", recorded.get("model"));
+		assertFalse(recorded.containsKey("stage"));
+
+		JsonRpcStreamProxy plain = new JsonRpcStreamProxy(server.url(), "echo", 5000, 5000, 0);
+		plain.setupRpc(null);
+		TrafficReplay replay = new TrafficReplay(plain, TrafficReplay.MAX_SPEED);
+		replay.replay(entries);
+		plain.disconnectProxy();
+		assertEquals(0, replay.getFailures());
+		assertEquals(0, replay.getDifferentResults());
+	}
+
+	/**
+	 * Stream server echoing the parameters of the calls, reconstructing those of session calls like session.py.
+	 */
+	private static class EchoServer implements Runnable {
+
+		private final ServerSocket socket = new ServerSocket(0);
+		private final Thread thread = new Thread(this, "EchoServer");
+		/** Parameters of the last echoed call. */
+		volatile Map<String, Object> lastParams;
+
+		EchoServer() throws IOException {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		URL url() throws Exception {
+			return JsonRpcStreamProxy.parseURL("jsonrpc2://localhost:" + socket.getLocalPort());
+		}
+
+		@Override
+		public void run() {
+			while (!socket.isClosed()) {
+				try (Socket connection = socket.accept()) {
+					serve(connection);
+				} catch (Exception e) {
+					// Closed
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void serve(Socket connection) throws Exception {
+			BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8);
+			Map<String, Object> constants = new HashMap<String, Object>();
+			Map<String, Map<String, Object>> last = new HashMap<String, Map<String, Object>>();
+			String line;
+			while ((line = in.readLine()) != null && !line.isEmpty()) {
+				JSONRPC2Request request = JSONRPC2Request.parse(line, false, true, true);
+				Object result = null;
+				if ("session_open".equals(request.getMethod())) {
+					constants = (Map<String, Object>) request.getPositionalParams().get(0);
+					last.clear();
+				} else if ("echo".equals(request.getMethod())) {
+					Map<String, Object> params = (Map<String, Object>) request.getPositionalParams().get(0);
+					if (Boolean.TRUE.equals(request.getNonStdAttribute("session"))) {
+						params = apply(constants, last, request.getMethod(), params);
+					}
+					lastParams = params;
+					result = new TreeMap<String, Object>(params);
+				}
+				out.write(new JSONRPC2Response(result, request.getID()).toString() + "\n");
+				out.flush();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Map<String, Object> apply(Map<String, Object> constants, Map<String, Map<String, Object>> last,
+				String method, Map<String, Object> delta) {
+			Map<String, Object> params = new HashMap<String, Object>(last.containsKey(method) ? last.get(method) : constants);
+			if (delta.containsKey(DeltaEncoder.REMOVED)) {
+				for (Object key : (List<Object>) delta.get(DeltaEncoder.REMOVED)) {
+					params.remove(key);
+				}
+			}
+			for (Map.Entry<String, Object> entry : delta.entrySet()) {
+				Object value = entry.getValue();
+				if (entry.getKey().equals(DeltaEncoder.REMOVED)) {
+					continue;
+				}
+				if (value instanceof Map && ((Map<String, Object>) value).containsKey(DeltaEncoder.DELTA)) {
+					Map<String, Object> elements = (Map<String, Object>) ((Map<String, Object>) value).get(DeltaEncoder.DELTA);
+					List<Object> array = new ArrayList<Object>((List<Object>) params.get(entry.getKey()));
+					List<Object> index = (List<Object>) elements.get("index");
+					List<Object> changed = (List<Object>) elements.get("value");
+					for (int i = 0; i < index.size(); i++) {
+						array.set(((Number) index.get(i)).intValue(), changed.get(i));
+					}
+					value = array;
+				}
+				params.put(entry.getKey(), value);
+			}
+			last.put(method, params);
+			return params;
+		}
+
+		void close() throws IOException {
+			socket.close();
+		}
+	}
+}
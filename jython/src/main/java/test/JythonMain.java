@@ -0,0 +1,45 @@
+package test;
+
+import org.python.core.PyList;
+import org.python.core.PyString;
+import org.python.util.PythonInterpreter;
+
+import java.util.Properties;
+
+/**
+ * Calls the Python functions inside the JVM with Jython instead of over RPC. Works, but quite slow.
+ *
+ * Call from the repository root: java test.JythonMain [src/main/python/my_func.py]
+ */
+public class JythonMain {
+
+    public static void naive_test(String[] args){
+        Properties props = new Properties();
+        props.put("python.console.encoding", "UTF-8"); // Used to prevent: console: Failed to install '': java.nio.charset.UnsupportedCharsetException: cp0.
+        props.put("python.security.respectJavaAccessibility", "false"); //don't respect java accessibility, so that we can access protected members on subclasses
+        props.put("python.import.site","false");
+
+        Properties preprops = System.getProperties();
+
+        PythonInterpreter.initialize(preprops, props, new String[0]);
+        PythonInterpreter pi = new PythonInterpreter();
+        pi.execfile(args.length > 0 ? args[0] : "src/main/python/my_func.py");
+        pi.exec("print(ping())");
+        pi.exec("result = ping()");
+        PyString result = (PyString)pi.get("result");
+        System.out.println(result);
+//        long start = System.nanoTime() / 1000000;
+//        pi.set("simulationTime", 1);
+//        pi.set("status", true);
+//        pi.set("sensors", new Double[] {1d, 2d, 3d});
+//        pi.exec("result = controlTest(simulationTime, status, sensors)");
+//        PyList resultList = (PyList)pi.get("result");
+//        System.out.println(resultList);
+//        long stop = System.nanoTime() / 1000000;
+//        System.out.println("controlTest: " + (stop - start) + "ms");
+    }
+
+    public static void main(String[] args) {
+        naive_test(args);
+    }
+}
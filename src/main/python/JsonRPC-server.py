@@ -64,6 +64,8 @@ import argparse
 import inspect
 import sys
 import importlib
+import request_jsonrpc
+import models
 from utils import indent
 
 PY3 = sys.version_info[0] == 3
@@ -85,9 +87,11 @@ parser.add_argument('--path', default='/control', help='Path of the JSON-RPC-Ser
 parser.add_argument('-f', '--functions', default='controlFunctions', help='Python module with control functions. Default controlFunctions')
 parser.add_argument('--noreload', action='store_true', help='Do not automatically reload server after script changes')
 parser.add_argument('-d', '--debug', action='store_true', help='Enable debug mode with debug output')
+parser.add_argument('--model-budget', default=0, type=float, help='Memory budget of the lazily loaded models [MB], see models.py. Default 0 (unlimited)')
 
 args = parser.parse_args()
 
+models.REGISTRY.budget = int(args.model_budget * 1024 * 1024)
 # instead of 'import controlFunctions', load dynamically using arguments
 importlib.import_module(args.functions)
 
@@ -108,6 +112,23 @@ jsonrpc.methods['print'] = print_msg
 
 jsonrpc.methods['stop'] = quit
 
+# curl -X POST -i -H "Content-type: application/json" -X POST http://localhost:2102/control -d '{ "jsonrpc": "2.0", "method": "describe", "params": [], "id": 1}'
+def describe():
+    """Returns the signatures of the registered functions."""
+    return request_jsonrpc.describe(jsonrpc.methods)
+
+jsonrpc.methods['describe'] = describe
+
+# curl -X POST -i -H "Content-type: application/json" -X POST http://localhost:2102/control -d '{ "jsonrpc": "2.0", "method": "pipeline", "params": [["control_pre", "control_flowrate"], {"feature": [1]}], "id": 1}'
+def pipeline(steps, *params):
+    """Calls the functions named by steps, each with the result of the previous one. Returns the last result."""
+    return request_jsonrpc.pipeline(jsonrpc.methods, steps, *params)
+
+jsonrpc.methods['pipeline'] = pipeline
+
+# curl -X POST -i -H "Content-type: application/json" -X POST http://localhost:2102/control -d '{ "jsonrpc": "2.0", "method": "model_stats", "params": [], "id": 1}'
+jsonrpc.methods['model_stats'] = models.stats
+
 # http://stackoverflow.com/questions/4040620/is-it-possible-to-list-all-functions-in-a-module
 functions = inspect.getmembers(sys.modules[args.functions], inspect.isfunction)
 for function in functions:
@@ -17,6 +17,25 @@ Simple custom RPC streaming protocol sending JSON-RPC 2.0 string lines encoded a
 
 EOL = End of line (i.e. \n in Python/Java or Unicode \u000a)
 
+A request may carry a non standard "deadline" attribute (ms since the epoch). Expired requests are not executed
+but answered with a "Deadline exceeded" error. The notification
+{ "jsonrpc": "2.0", "method": "cancel", "params": [id]} cancels a queued or running request of the connection.
+
+Numpy arrays may be transferred as binary attachments following the EOL, see attachments.py.
+Sparse parameters are received as dense arrays, or as scipy.sparse matrices by functions declared with
+@attachments.sparse_input().
+Parameters of time-stepped calls may be sent as delta to the previous call, see session.py.
+Requests with "timing": true receive the server side timing breakdown in the response, see timing.py.
+Queued requests with "priority": "high" are executed before "normal" and "bulk" ones, see scheduling.py.
+The method "pipeline" chains functions on the server, only the result of the last one is sent back,
+see request_jsonrpc.pipeline().
+Models of functions declared with @models.model are loaded on the first call and evicted least recently used
+beyond --model-budget, the method "model_stats" returns their loads, hits and evictions, see models.py.
+
+With --pool the requests of a connection are executed concurrently by a worker pool and the responses are
+written as they finish, i.e. possibly out of order. Clients match responses by their "id".
+Use threads for functions releasing the GIL (e.g. numpy, tensorflow), processes otherwise.
+
 This server avoids "java.net.BindException: Address already in use: connect"
 due to ephemeral TCP ports exhaustion.
 
@@ -24,6 +43,8 @@ See controlJsonRpcServer.py for a JSON-RPC 2.0 compliant server using HTTP as co
 
 Call: python controlJsonRpcStreamServer.py
 or:   pypy controlJsonRpcStreamServer.py
+or:   python controlJsonRpcStreamServer.py --workers 4   (pre-forked worker processes sharing one port)
+or:   python controlJsonRpcStreamServer.py --pool threads --pool-size 8   (out of order completion, Python 3)
 
 This script works with Python 2.7 and Python 3.4.
 Supports pypy (http://pypy.org/) with JIT compliation
@@ -58,10 +79,18 @@ Functions calls are about 20ms. The Jython.jar is about 27MB.
 from __future__ import division, unicode_literals, print_function, absolute_import, with_statement  # Ensure compatibility with Python 3
 import argparse
 import inspect
+import os
+import signal
 import sys
 import json
 import threading
+import traceback
 import request_jsonrpc
+import attachments
+import session
+import timing
+import scheduling
+import models
 import importlib
 from utils import indent
 
@@ -71,6 +100,8 @@ PY2 = sys.version_info[0] == 2
 if PY3:
     from socketserver import StreamRequestHandler
     from socketserver import TCPServer
+    import concurrent.futures
+    import multiprocessing
 elif PY2:
     from SocketServer import StreamRequestHandler
     from SocketServer import TCPServer
@@ -86,10 +117,18 @@ parser.add_argument('-p', '--port', default='2102', type=int, help='Port of the
 parser.add_argument('-s', '--host', default='127.0.0.1', help='Host address of the stream server. Default 127.0.0.1')
 parser.add_argument('-f', '--functions', default='controlfunctions', help='Python module with control functions. Default controlFunctions')
 parser.add_argument('-d', '--debug', action='store_true', help='Enable debug mode with debug output')
+parser.add_argument('-w', '--workers', default=1, type=int, help='Number of pre-forked worker processes sharing the port (POSIX only). Default 1')
+parser.add_argument('--pool', choices=['threads', 'processes'], help='Execute the requests of a connection concurrently by a pool of threads or processes (Python 3). Default sequential')
+parser.add_argument('--pool-size', default=4, type=int, help='Number of threads or processes of the pool. Default 4')
+parser.add_argument('--model-budget', default=0, type=float, help='Memory budget of the lazily loaded models [MB], least recently used models are evicted beyond it, see models.py. Default 0 (unlimited)')
 
 args = parser.parse_args()
+if args.pool and PY2:
+    parser.error('--pool requires Python 3')
 
+models.REGISTRY.budget = int(args.model_budget * 1024 * 1024)
 # instead of 'import controlFunctions', load dynamically using arguments
+# Models of functions declared with @models.model are loaded on their first call, see models.py
 importlib.import_module(args.functions)
 
 class JsonRpcStreamServerHandler(StreamRequestHandler):
@@ -105,29 +144,43 @@ class JsonRpcStreamServerHandler(StreamRequestHandler):
     def handle(self):
         try:
             print("Connection opened from {} and listening...".format(self.client_address[0]))
-            ok = True
-            while ok:
-                # self.rfile is a file-like object created by the handler;
-                # we can now use e.g. readline() instead of raw recv() calls
-                self.data = self.rfile.readline().strip()
-                # print "{} wrote:".format(self.client_address[0])
-                if args.debug:
-                    print("'" + self.data + "'")
-                # Likewise, self.wfile is a file-like object used to write back
-                # to the client
-                # self.wfile.write(self.data.upper())
-                jsonResponse = self.data.decode('UTF-8')
-                # An empty line means stopping the connection
-                if jsonResponse != None and jsonResponse.strip() != "":
-                    request = json.loads(jsonResponse)
-                    response = jsonrpc.handle_rpc(request)
-                    jsonResponse = json.dumps(response) + "\n"
-                    self.wfile.write(jsonResponse.encode('UTF-8'))
-                    self.wfile.flush()
-                    if args.debug:
-                        print("handled: " + jsonResponse)
-                else:
-                    ok = False
+            # Requests are read by a separate thread, such that cancel messages are seen
+            # while a request is queued or running.
+            self.requests = scheduling.PriorityRequestQueue()
+            self.pending = set()
+            self.cancelled = set()
+            self.lock = threading.Lock()
+            self.session = session.DeltaSession()
+            # Futures of the requests executed by the pool by id, guarded by lock
+            self.running = {}
+            self.write_lock = threading.Lock()
+            pool = worker_pool()
+            # Requests wait in the priority queue rather than in the pool, which executes them first come first served
+            self.slots = threading.Semaphore(args.pool_size)
+            reader = threading.Thread(target=self.read_requests)
+            reader.daemon = True
+            reader.start()
+            while True:
+                # Take a request only once the pool can start it, such that a later high priority request overtakes
+                if pool is not None:
+                    self.slots.acquire()
+                request, response = self.requests.get()
+                # None means the connection is stopped
+                if request is None:
+                    break
+                if response is None and pool is not None:
+                    self.dispatch(pool, request)
+                    continue
+                if pool is not None:
+                    self.slots.release()
+                if response is None:
+                    response = jsonrpc.handle_rpc(request, self.cancelled)
+                self.complete(request, response)
+            # Write the responses of the requests still running before the connection is closed
+            with self.lock:
+                running = list(self.running.values())
+            if running:
+                concurrent.futures.wait(running)
             print("Connection  stopped")
         except ConnectionResetError:
             print("\nconnection closed.")
@@ -135,8 +188,138 @@ class JsonRpcStreamServerHandler(StreamRequestHandler):
             print("\nKeyboard interrupt received in request, exiting.")
             server_shutdown()
 
+    def read_requests(self):
+        """Reads the requests of the connection and queues them for execution.
+
+        Cancel messages, e.g. { "jsonrpc": "2.0", "method": "cancel", "params": [1]}, are applied immediately:
+        a queued request is dropped and a running request can poll request_jsonrpc.is_cancelled().
+        """
+        try:
+            while True:
+                # self.rfile is a file-like object created by the handler;
+                # we can now use e.g. readline() instead of raw recv() calls
+                self.data = self.rfile.readline().strip()
+                received_at = timing.now_millis()
+                if args.debug:
+                    print("'" + self.data.decode('UTF-8') + "'")
+                jsonRequest = self.data.decode('UTF-8')
+                # An empty line means stopping the connection
+                if jsonRequest.strip() == "":
+                    break
+                request = json.loads(jsonRequest)
+                if 'attachments' in request:
+                    arrays = attachments.read_attachments(self.rfile, request['attachments'])
+                    method = jsonrpc.methods.get(request.get('method'))
+                    request['params'] = attachments.resolve(request.get('params'), arrays, attachments.sparse_format(method))
+                # The session state is updated in the order the requests are received
+                response = None
+                try:
+                    if request.get('method') == 'session_open':
+                        self.session.open(request['params'][0])
+                        response = {'jsonrpc': '2.0', 'id': request.get('id'), 'result': True}
+                    elif request.get('session'):
+                        request['params'] = [self.session.apply(request['method'], request['params'][0])]
+                except (KeyError, IndexError, TypeError):
+                    traceback.print_exc(file=sys.stderr)
+                    response = request_jsonrpc.error_response(request, request_jsonrpc.INVALID_PARAMS, 'Invalid session parameters')
+                timing.received(request, received_at)
+                with self.lock:
+                    if request.get('method') == 'cancel':
+                        # Only ids of queued or running requests, since ids may be reused by the client
+                        self.cancelled.update(id for id in (request.get('params') or []) if id in self.pending)
+                        for id in self.cancelled:
+                            # Drops requests not yet started by the pool, running threads poll is_cancelled()
+                            if id in self.running:
+                                self.running[id].cancel()
+                    else:
+                        self.pending.add(request.get('id'))
+                        self.requests.put(request, response)
+        except (IOError, OSError, ValueError) as e:
+            print("\nconnection closed: {}".format(e))
+        finally:
+            self.requests.close()
+
+    def dispatch(self, pool, request):
+        """Submits the request to the pool, the response is written by the thread completing it."""
+        if args.pool == 'processes':
+            future = pool.submit(execute, request)
+        else:
+            future = pool.submit(jsonrpc.handle_rpc, request, self.cancelled)
+        with self.lock:
+            self.running[request.get('id')] = future
+        future.add_done_callback(lambda f: self.completed(request, f))
+
+    def completed(self, request, future):
+        """Completes a request executed by the pool."""
+        self.slots.release()
+        with self.lock:
+            if self.running.get(request.get('id')) is future:
+                del self.running[request.get('id')]
+        if future.cancelled():
+            response = request_jsonrpc.error_response(request, request_jsonrpc.REQUEST_CANCELLED, 'Request cancelled')
+        elif future.exception() is not None:  # e.g. unpicklable parameters or a crashed process
+            print("Request {} failed in pool: {!r}".format(request.get('id'), future.exception()), file=sys.stderr)
+            response = request_jsonrpc.error_response(request, request_jsonrpc.INTERNAL_ERROR, 'Internal server error')
+        else:
+            response = future.result()
+        try:
+            self.complete(request, response)
+        except (IOError, OSError) as e:
+            print("\nconnection closed: {}".format(e))
+
+    def complete(self, request, response):
+        """Writes the response and forgets the id of the request."""
+        with self.lock:
+            self.pending.discard(request.get('id'))
+            self.cancelled.discard(request.get('id'))
+        with self.write_lock:
+            self.write_response(request, response)
+
+    def write_response(self, request, response):
+        """Writes the response. Numpy arrays of the result are sent as attachments if the request has attachments."""
+        arrays = []
+        if 'attachments' in request and 'result' in response:
+            response['result'] = attachments.extract(response['result'], arrays)
+            encoded = [attachments.encode(array, request.get('result_precision')) for array in arrays]
+            arrays = [array for array, _ in encoded]
+            response['attachments'] = [header for _, header in encoded]
+        jsonResponse = timing.dumps(response, default=attachments.to_json) + "\n"
+        self.wfile.write(jsonResponse.encode('UTF-8'))
+        for array in arrays:
+            self.wfile.write(array.data)
+        self.wfile.flush()
+        if args.debug:
+            print("handled: " + jsonResponse)
+
 jsonrpc = request_jsonrpc.register(args.debug)
 
+_pool = None
+_pool_lock = threading.Lock()
+
+def worker_pool():
+    """Returns the worker pool of this process shared by all connections, None for sequential execution.
+
+    The pool is created on first use, thus every pre-forked worker (--workers) has its own pool.
+    """
+    global _pool
+    if not args.pool:
+        return None
+    with _pool_lock:
+        if _pool is None:
+            if args.pool == 'processes':
+                # fork, such that the processes inherit the registered functions and loaded models
+                _pool = concurrent.futures.ProcessPoolExecutor(args.pool_size, mp_context=multiprocessing.get_context('fork'))
+            else:
+                _pool = concurrent.futures.ThreadPoolExecutor(args.pool_size)
+        return _pool
+
+def execute(request):
+    """Executes a request in a process of the pool.
+
+    Cancel messages only drop requests not yet passed to a process, is_cancelled() only sees the deadline.
+    """
+    return jsonrpc.handle_rpc(request)
+
 # echo '{ "jsonrpc": "2.0", "method": "ping", "params": [], "id": 1}' | nc 127.0.0.1 2102
 @jsonrpc
 def ping():
@@ -161,6 +344,15 @@ def server_shutdown():
 
 jsonrpc.methods['stop'] = server_shutdown
 
+# echo '{ "jsonrpc": "2.0", "method": "describe", "params": [], "id": 1}' | nc 127.0.0.1 2102
+jsonrpc.methods['describe'] = jsonrpc.describe
+
+# echo '{ "jsonrpc": "2.0", "method": "pipeline", "params": [["keras_preprocess", "keras_predict"], {"feature": [1]}], "id": 1}' | nc 127.0.0.1 2102
+jsonrpc.methods['pipeline'] = jsonrpc.pipeline
+
+# echo '{ "jsonrpc": "2.0", "method": "model_stats", "params": [], "id": 1}' | nc 127.0.0.1 2102
+jsonrpc.methods['model_stats'] = models.stats
+
 # http://stackoverflow.com/questions/4040620/is-it-possible-to-list-all-functions-in-a-module
 functions = inspect.getmembers(sys.modules[args.functions], inspect.isfunction)
 for function in functions:
@@ -173,17 +365,51 @@ li = "\n    - "
 print("Functions:" + li + li.join(str(x) for x in sorted(jsonrpc.methods)))
 print("Ctrl-C to stop")
 
+def serve_workers(workers):
+    """Forks worker processes serving the inherited listening socket of the server and waits for them.
+
+    The functions module is imported before forking, thus loaded models are shared copy-on-write.
+    Each worker handles one connection at a time, the kernel distributes the connections.
+    """
+    children = []
+    for i in range(workers):
+        pid = os.fork()
+        if pid == 0:
+            try:
+                server.serve_forever()
+            except KeyboardInterrupt:
+                pass
+            finally:
+                os._exit(0)
+        children.append(pid)
+    print("Started {} workers: {}".format(workers, children))
+    # Terminate the workers as well if the main process is terminated
+    signal.signal(signal.SIGTERM, lambda signum, frame: sys.exit(0))
+    try:
+        for pid in children:
+            os.waitpid(pid, 0)
+    finally:
+        for pid in children:
+            try:
+                os.kill(pid, signal.SIGTERM)
+            except OSError:  # Worker already terminated
+                pass
+
 server = None
 try:
-    # Create the server
+    # Create the server, address reuse must be set before binding
+    TCPServer.allow_reuse_address = True
     server = TCPServer((args.host, args.port), JsonRpcStreamServerHandler)
-    server.allow_reuse_address = True
 
     # Activate the server; this will keep running until you interrupt the program with Ctrl-C
-    server.serve_forever()
+    if args.workers > 1:
+        serve_workers(args.workers)
+    else:
+        server.serve_forever()
 except KeyboardInterrupt:
     print("\nKeyboard interrupt received, exiting.")
-    server.shutdown()
+    if args.workers <= 1:  # The workers stop on their own
+        server.shutdown()
 finally:
     print("Terminate server")
     if server != None:  # Check if server exists, since in case of server creation errors, server variable may not be set
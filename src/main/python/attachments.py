@@ -0,0 +1,154 @@
+"""
+Binary tensor attachments of the JSON-RPC stream protocol.
+
+A request or response may carry the non standard attribute "attachments", a list of headers like
+{"dtype": "float32", "shape": [3, 4], "order": "<", "nbytes": 48}.
+The raw bytes of the attachments follow the EOL of the JSON line, concatenated in the order of the headers.
+Parameters and results refer to an attachment by index with the placeholder {"$tensor": 0}.
+
+Attachments are decoded with np.frombuffer() without per element work. The arrays are read-only.
+A request carrying "attachments" (possibly empty) receives numpy arrays of the result as attachments as well.
+
+Reduced precision: "float16" arrays stay float16. "bfloat16" (the upper half of float32) and "int8" with a
+"scale" (value = scale * int8, quantized per tensor) are decoded to float32. A request with the non standard
+attribute "result_precision": "float16", "bfloat16" or "int8" receives the float arrays of the result encoded
+with that precision.
+
+Sparse matrices are sent as {"$sparse": {"format": "csr", "shape": [rows, cols], "indptr": {"$tensor": 0},
+"indices": {"$tensor": 1}, "data": {"$tensor": 2}}}, the compressed sparse row components as attachments.
+Functions receive them as dense numpy arrays, unless declared with @sparse_input() to receive scipy.sparse matrices:
+
+    @attachments.sparse_input('csr')
+    def keras_predict(feature): ...
+"""
+
+from __future__ import division, unicode_literals, print_function, absolute_import, with_statement  # Ensure compatibility with Python 3
+
+__author__ = 'fyk'
+__url__ = 'github.com/makefile'
+
+PLACEHOLDER = '$tensor'
+SPARSE = '$sparse'
+PRECISIONS = ('float16', 'bfloat16', 'int8')
+# Formats of scipy.sparse matrices
+SPARSE_FORMATS = ('csr', 'csc', 'coo', 'lil', 'dok', 'bsr', 'dia')
+
+def sparse_input(format='csr'):
+    """Decorator of a function receiving sparse parameters as scipy.sparse matrices of the format."""
+    if format not in SPARSE_FORMATS:
+        raise ValueError("Unknown sparse format " + repr(format))
+    def decorate(func):
+        func.sparse_format = format
+        return func
+    return decorate
+
+def sparse_format(func):
+    """Returns the format the function receives sparse parameters in, 'dense' by default."""
+    return getattr(func, 'sparse_format', 'dense')
+
+def read_attachments(rfile, headers):
+    """Reads the raw bytes of the attachments from the stream and returns them as numpy arrays."""
+    import numpy as np
+    arrays = []
+    for header in headers:
+        data = rfile.read(header['nbytes'])
+        if len(data) != header['nbytes']:
+            raise IOError("Connection closed while reading attachment")
+        arrays.append(decode(data, header).reshape(header['shape']))
+    return arrays
+
+def decode(data, header):
+    """Returns the flat array of the raw bytes of an attachment."""
+    import numpy as np
+    order = str(header.get('order', '<'))
+    if header['dtype'] == 'bfloat16':
+        bits = np.frombuffer(data, dtype=np.dtype('uint16').newbyteorder(order))
+        return (bits.astype(np.uint32) << 16).view(np.float32)
+    array = np.frombuffer(data, dtype=np.dtype(str(header['dtype'])).newbyteorder(order))
+    if 'scale' in header:
+        return array.astype(np.float32) * np.float32(header['scale'])
+    return array
+
+def encode(array, precision):
+    """Returns the array of floats encoded with the precision (see PRECISIONS) and the header of the encoded array.
+
+    Other arrays and unknown precisions are returned unchanged. Raises ValueError for int8 of non-finite values.
+    """
+    import numpy as np
+    if precision not in PRECISIONS or array.dtype.kind != 'f' or array.dtype == np.float16:
+        return array, header(array)
+    if precision == 'float16':
+        encoded = array.astype(np.float16)
+        return encoded, header(encoded)
+    if precision == 'bfloat16':
+        bits = np.ascontiguousarray(array, dtype=np.float32).view(np.uint32)
+        # Round to nearest even, as the Java encoder
+        encoded = ((bits + 0x7fff + ((bits >> 16) & 1)) >> 16).astype(np.uint16)
+        encoded[np.isnan(array)] = 0x7fc0
+        result = header(encoded)
+        result['dtype'] = 'bfloat16'
+        return encoded, result
+    if not np.all(np.isfinite(array)):
+        # NaN and infinity have no int8 value, and would make the scale NaN or infinite
+        raise ValueError('int8 cannot encode NaN or infinity, use float16 or bfloat16')
+    peak = float(np.max(np.abs(array))) if array.size else 0.0
+    scale = peak / 127 if peak > 0 else 1.0
+    encoded = np.clip(np.rint(array / scale), -127, 127).astype(np.int8)
+    result = header(encoded)
+    result['scale'] = scale
+    return encoded, result
+
+def resolve(obj, arrays, sparse='dense'):
+    """Replaces the placeholders in the parameters by the attachment arrays.
+
+    Sparse matrices are materialized as dense arrays or as scipy.sparse matrices of the format, see sparse_format().
+    """
+    if isinstance(obj, dict):
+        if len(obj) == 1 and PLACEHOLDER in obj:
+            return arrays[obj[PLACEHOLDER]]
+        if len(obj) == 1 and SPARSE in obj:
+            return materialize(resolve(obj[SPARSE], arrays), sparse)
+        return dict((k, resolve(v, arrays, sparse)) for k, v in obj.items())
+    if isinstance(obj, list):
+        return [resolve(v, arrays, sparse) for v in obj]
+    return obj
+
+def materialize(components, sparse):
+    """Returns the CSR matrix of the components as dense array or scipy.sparse matrix of the format."""
+    import numpy as np
+    if components.get('format') != 'csr':
+        raise ValueError("Unsupported sparse format " + repr(components.get('format')))
+    shape = tuple(components['shape'])
+    indptr, indices, data = components['indptr'], components['indices'], components['data']
+    if sparse in SPARSE_FORMATS:
+        import scipy.sparse
+        return scipy.sparse.csr_matrix((data, indices, indptr), shape=shape).asformat(sparse)
+    dense = np.zeros(shape, dtype=data.dtype)
+    dense[np.repeat(np.arange(shape[0]), np.diff(indptr)), indices] = data
+    return dense
+
+def extract(obj, arrays):
+    """Replaces numpy arrays in the result by placeholders and appends them to arrays."""
+    import numpy as np
+    if isinstance(obj, np.ndarray):
+        arrays.append(np.ascontiguousarray(obj))
+        return {PLACEHOLDER: len(arrays) - 1}
+    if isinstance(obj, dict):
+        return dict((k, extract(v, arrays)) for k, v in obj.items())
+    if isinstance(obj, (list, tuple)):
+        return [extract(v, arrays) for v in obj]
+    return to_json(obj) if type(obj).__module__ == np.__name__ else obj
+
+def header(array):
+    """Returns the attachment header of the array."""
+    order = array.dtype.byteorder
+    if order in ('=', '|'):
+        import sys
+        order = '<' if sys.byteorder == 'little' else '>'
+    return {'dtype': array.dtype.name, 'shape': list(array.shape), 'order': order, 'nbytes': array.nbytes}
+
+def to_json(obj):
+    """json.dumps() default hook converting numpy arrays and scalars for plain JSON responses."""
+    if hasattr(obj, 'tolist'):
+        return obj.tolist()
+    raise TypeError(repr(obj) + " is not JSON serializable")
@@ -12,6 +12,9 @@ from __future__ import division, unicode_literals, print_function, absolute_impo
 import sys
 import bottle
 import traceback
+import attachments
+import timing
+import request_jsonrpc
 
 __author__ = 'Ole Martin Bjorndalen'
 __email__ = 'ombdalen@gmail.com'
@@ -53,36 +56,53 @@ class NameSpace:
         """Sets up bottle request handler."""
         @self.app.post(self.path)
         def rpc():
+            received_at = timing.now_millis()
             request = bottle.request.json
-
-            try:
-                name = request['method']
-                func = self.methods[name]
-                params = request.get('params', {})
-                if params != None:  # Added by rkurmann for supporting null parameters
-                    result = func(*params)
-                else:
-                    result = func()
-
-                return {
-                    'jsonrpc': '2.0',  # Added by rkurmann for JSON-RPC 2.0 compliancy
-                    'id': request['id'],
-                    'result': result,
-                    # 'error': None,  # Removed by rkurmann for JSON-RPC 2.0 compliancy
-                }
-            except:
-                if not self.app.catchall:
-                    raise
-                traceback.print_exc(file=sys.stderr)
-                response = {
-                    'id': request['id'],
-                    # 'result': None,  # Removed by rkurmann for JSON-RPC 2.0 compliancy
-                    'error': 'Internal server error',
-                }
-                if bottle.debug:
-                    response['traceback'] = traceback.format_exc()
-
-                return response
+            # Requests with "timing": true receive the server side timing breakdown, see timing.py
+            timing.received(request, received_at)
+
+            # Drop requests whose "deadline" (ms since the epoch) has passed
+            deadline = request.get('deadline')
+            if deadline is not None and timing.now_millis() > deadline:
+                return request_jsonrpc.error_response(request, request_jsonrpc.DEADLINE_EXCEEDED, 'Deadline exceeded')
+
+            response = timing.execute(request, lambda: self._call(request))
+            # Encoded here instead of by bottle, such that numpy results are sent as JSON lists like by the stream server
+            bottle.response.content_type = 'application/json'
+            return timing.dumps(response, default=attachments.to_json)
+
+    def _call(self, request):
+        """Executes the request and returns the response."""
+        try:
+            name = request['method']
+            func = self.methods[name]
+            params = request.get('params', {})
+            if params != None:  # Added by rkurmann for supporting null parameters
+                result = func(*params)
+            else:
+                result = func()
+
+            return {
+                'jsonrpc': '2.0',  # Added by rkurmann for JSON-RPC 2.0 compliancy
+                'id': request['id'],
+                'result': result,
+                # 'error': None,  # Removed by rkurmann for JSON-RPC 2.0 compliancy
+            }
+        except request_jsonrpc.InvalidParams as e:
+            return request_jsonrpc.error_response(request, request_jsonrpc.INVALID_PARAMS, str(e))
+        except:
+            if not self.app.catchall:
+                raise
+            traceback.print_exc(file=sys.stderr)
+            response = {
+                'id': request['id'],
+                # 'result': None,  # Removed by rkurmann for JSON-RPC 2.0 compliancy
+                'error': 'Internal server error',
+            }
+            if bottle.debug:
+                response['traceback'] = traceback.format_exc()
+
+            return response
 
     def __call__(self, func):
         """This is called when the mapper is used as a decorator."""
@@ -32,8 +32,8 @@ def keras_test_numpy(param_dict):
 
     # predict 每行预测一个结果
     pred = np_arr[:,-1] # 这里模拟成取最后一列，这会得到一个行向量
-    # 返回预测的结果数组和个数
-    return pred.tolist(), pred.shape[0]
+    # 返回预测的结果数组和个数, numpy数组作为二进制附件或JSON列表返回
+    return pred, pred.shape[0]
 
 @static_vars(lastDay=0)  # static_vars work only for a single thread
 def control_flowrate(simulationTime, status, sensors, sensorsUsed, properties, propertiesStr, preRun, controlSignalsUsed, numLogValues, stage, fixedTimestep, verboseLevel, parameters):
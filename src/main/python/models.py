@@ -0,0 +1,222 @@
+"""
+Lazily loaded models kept under a memory budget.
+
+Functions declare the model they need with a loader, the model is loaded on the first call instead of when the
+functions module is imported, and passed as first parameter:
+
+    @models.model(lambda: keras.models.load_model('churn.h5'))
+    def keras_churn(model, param_dict):
+        return model.predict(param_dict['feature'])
+
+The loaded models are kept while their total size is within the budget (--model-budget), beyond that the least
+recently used models not in use are evicted and loaded again on their next call. A model in use is never evicted,
+thus the budget may be exceeded while more models are in use than fit. The size of a model is given to the
+decorator or estimated, see estimate_size().
+
+The server method "model_stats" returns the loads, hits and evictions per model, see ModelRegistry.stats().
+Each process has its own registry, i.e. the statistics are per pre-forked worker or pool process.
+"""
+
+from __future__ import division, unicode_literals, print_function, absolute_import, with_statement  # Ensure compatibility with Python 3
+import collections
+import functools
+import gc
+import inspect
+import os
+import sys
+import threading
+import time
+
+__author__ = 'fyk'
+__url__ = 'github.com/makefile'
+
+def estimate_size(model):
+    """Returns the estimated size of the model [bytes].
+
+    numpy arrays count their nbytes, Keras models 4 bytes per parameter, containers the sum of their elements.
+    """
+    if hasattr(model, 'nbytes'):
+        return int(model.nbytes)
+    if hasattr(model, 'count_params'):
+        return int(model.count_params()) * 4
+    if isinstance(model, dict):
+        return sum(estimate_size(v) for v in model.values())
+    if isinstance(model, (list, tuple)):
+        return sum(estimate_size(v) for v in model)
+    return sys.getsizeof(model)
+
+class _Entry(object):
+    """A model of the registry and its statistics."""
+    def __init__(self, loader, size, unload):
+        self.loader, self.size, self.unload = loader, size, unload
+        self.model = None
+        self.nbytes = 0
+        self.in_use = 0
+        self.loads = self.hits = self.evictions = 0
+        self.load_millis = 0.0
+        self.loading = threading.Lock()
+
+class _Collector(object):
+    """Runs gc.collect() in a daemon thread, once for the evictions requested while it was busy, such that calls
+    evicting models do not wait for a full collection."""
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.pending = None
+        self.pid = None
+
+    def request(self):
+        with self.lock:
+            if self.pid != os.getpid():
+                # Threads do not survive the fork of pre-forked workers
+                self.pid = os.getpid()
+                self.pending = threading.Event()
+                thread = threading.Thread(target=self._run, args=(self.pending,), name='models-gc')
+                thread.daemon = True
+                thread.start()
+            self.pending.set()
+
+    @staticmethod
+    def _run(pending):
+        while True:
+            pending.wait()
+            pending.clear()
+            gc.collect()
+
+_COLLECTOR = _Collector()
+
+class ModelRegistry(object):
+    """Models loaded on first use and evicted least recently used beyond the budget. Thread-safe."""
+
+    def __init__(self, budget=0):
+        """budget: total size of the loaded models [bytes], 0 for unlimited."""
+        self.budget = budget
+        self.entries = {}
+        # Loaded models, least recently used first
+        self.loaded = collections.OrderedDict()
+        self.lock = threading.Lock()
+
+    def register(self, name, loader, size=None, unload=None):
+        """Registers the loader of a model.
+
+        size: size of the model [bytes], a function of the model or None to estimate it.
+        unload: called with the evicted model, e.g. to release GPU memory.
+        """
+        with self.lock:
+            self.entries[name] = _Entry(loader, size, unload)
+
+    def acquire(self, name):
+        """Returns the model, loading it if needed. Must be followed by release(name)."""
+        entry = self.entries[name]
+        with self.lock:
+            entry.in_use += 1
+            if entry.model is not None:
+                entry.hits += 1
+                # Most recently used last
+                self.loaded[name] = self.loaded.pop(name)
+                return entry.model
+        # Concurrent first calls load the model once, without blocking calls of other models
+        try:
+            with entry.loading:
+                with self.lock:
+                    if entry.model is not None:
+                        entry.hits += 1
+                        self.loaded[name] = self.loaded.pop(name)
+                        return entry.model
+                start = time.time()
+                model = entry.loader()
+                load_millis = (time.time() - start) * 1000
+                size = entry.size(model) if callable(entry.size) else entry.size
+                nbytes = estimate_size(model) if size is None else int(size)
+                with self.lock:
+                    entry.model, entry.nbytes = model, nbytes
+                    entry.loads += 1
+                    entry.load_millis += load_millis
+                    self.loaded[name] = entry
+                    evicted = self._evict()
+        except BaseException:
+            self.release(name)
+            raise
+        self._unload(evicted)
+        return model
+
+    def release(self, name):
+        """Ends the use of the model acquired by acquire(name)."""
+        with self.lock:
+            self.entries[name].in_use -= 1
+            evicted = self._evict()
+        self._unload(evicted)
+
+    def _evict(self):
+        """Removes the least recently used models not in use while over budget, returns the (entry, model) pairs."""
+        evicted = []
+        if self.budget <= 0:
+            return evicted
+        used = sum(entry.nbytes for entry in self.loaded.values())
+        for name, entry in list(self.loaded.items()):
+            if used <= self.budget:
+                break
+            if entry.in_use == 0:
+                del self.loaded[name]
+                evicted.append((entry, entry.model))
+                entry.model = None
+                entry.evictions += 1
+                used -= entry.nbytes
+        return evicted
+
+    def _unload(self, evicted):
+        if evicted:
+            for entry, model in evicted:
+                if entry.unload is not None:
+                    entry.unload(model)
+            # Release the last references before collecting, e.g. of models with reference cycles
+            del evicted[:], entry, model
+            _COLLECTOR.request()
+
+    def stats(self):
+        """Returns the budget, the size of the loaded models [bytes] and per model
+        loaded, nbytes, loads, hits, evictions and the total load time [ms]."""
+        with self.lock:
+            models = {}
+            for name, entry in self.entries.items():
+                models[name] = {
+                    'loaded': entry.model is not None,
+                    'nbytes': entry.nbytes,
+                    'loads': entry.loads,
+                    'hits': entry.hits,
+                    'evictions': entry.evictions,
+                    'load_millis': round(entry.load_millis, 3),
+                }
+            return {
+                'budget': self.budget,
+                'used': sum(entry.nbytes for entry in self.loaded.values()),
+                'models': models,
+            }
+
+# Registry of the functions declared with @model
+REGISTRY = ModelRegistry()
+
+def model(loader, size=None, unload=None, registry=REGISTRY):
+    """Decorator of a function receiving the model of the loader as first parameter, see ModelRegistry.register().
+
+    The decorated function is called without the model parameter.
+    """
+    def decorate(func):
+        name = func.__name__
+        registry.register(name, loader, size, unload)
+        @functools.wraps(func)
+        def call(*args, **kwargs):
+            loaded = registry.acquire(name)
+            try:
+                return func(loaded, *args, **kwargs)
+            finally:
+                registry.release(name)
+        if hasattr(inspect, 'signature'):
+            # describe() reports the parameters without the model
+            signature = inspect.signature(func)
+            call.__signature__ = signature.replace(parameters=list(signature.parameters.values())[1:])
+        return call
+    return decorate
+
+def stats():
+    """Returns the statistics of the models, see ModelRegistry.stats()."""
+    return REGISTRY.stats()
@@ -8,8 +8,11 @@ Based on bottle_jsonrpc version 0.2.1 of Ole Martin Bjorndalen.
 """
 
 from __future__ import division, unicode_literals, print_function, absolute_import, with_statement  # Ensure compatibility with Python 3
+import inspect
 import sys
+import threading
 import traceback
+import timing
 
 __author__ = 'Roland Kurmann'
 __email__ = 'roland dot kurmann at velasolaris dot com'
@@ -17,6 +20,38 @@ __url__ = 'http://velasolaris.com'
 __license__ = 'MIT'
 __version__ = '9.2'
 
+# JSON-RPC 2.0 error codes for invalid method parameters and internal errors
+INVALID_PARAMS = -32602
+INTERNAL_ERROR = -32603
+# Non standard error codes (JSON-RPC 2.0 reserves -32000 to -32099 for implementation defined server errors)
+DEADLINE_EXCEEDED = -32001
+REQUEST_CANCELLED = -32002
+
+_current_call = threading.local()
+
+class InvalidParams(ValueError):
+    """Raised by functions for invalid parameters, answered with an INVALID_PARAMS error carrying the message."""
+
+def is_cancelled():
+    """Returns True if the request executed by the current thread has been cancelled or its deadline has passed.
+
+    Long running functions (e.g. keras_*) may poll this to stop computing a result nobody will read.
+    """
+    call = getattr(_current_call, 'call', None)
+    if call is None:
+        return False
+    cancelled, request = call
+    deadline = request.get('deadline')
+    return request.get('id') in cancelled or (deadline is not None and timing.now_millis() > deadline)
+
+def error_response(request, code, message):
+    """Returns a JSON-RPC 2.0 error response for the request."""
+    return {
+        'jsonrpc': '2.0',
+        'id': request.get('id'),
+        'error': {'code': code, 'message': message},
+    }
+
 def get_public_methods(obj):
     """Return a dictionary of all public callables in a namespace.
 
@@ -32,6 +67,57 @@ def get_public_methods(obj):
     return methods
 
 
+def describe(methods):
+    """Returns name, parameter names and documentation of the functions, sorted by name.
+
+    "required" is the number of leading positional parameters without default, a call passes from required
+    up to all "params", or more if the function takes "varargs".
+    Used by clients to validate calls before sending them, e.g. for typed stubs.
+    """
+    description = []
+    for name in sorted(methods):
+        func = methods[name]
+        try:
+            if hasattr(inspect, 'signature'):
+                parameters = [p for p in inspect.signature(func).parameters.values()
+                              if p.kind in (p.POSITIONAL_ONLY, p.POSITIONAL_OR_KEYWORD, p.VAR_POSITIONAL)]
+                params = [p.name for p in parameters if p.kind != p.VAR_POSITIONAL]
+                required = len([p for p in parameters if p.kind != p.VAR_POSITIONAL and p.default is p.empty])
+                varargs = len(params) < len(parameters)
+            else:
+                spec = inspect.getargspec(func)
+                params = list(spec.args)
+                required = len(params) - len(spec.defaults or ())
+                varargs = spec.varargs is not None
+        except (TypeError, ValueError):  # e.g. builtins without signature
+            params, required, varargs = [], 0, True
+        description.append({
+            'name': name,
+            'params': params,
+            'required': required,
+            'varargs': varargs,
+            'doc': inspect.getdoc(func),
+        })
+    return description
+
+def pipeline(methods, steps, *params):
+    """Calls the functions named by steps one after the other and returns the result of the last one.
+
+    The first function is called with params, each following function with the result of the previous one:
+    a tuple result (e.g. return pred, pred.shape[0]) is passed as positional parameters, any other result
+    as single parameter. Intermediate results stay on the server, e.g. numpy arrays between preprocessing,
+    prediction and postprocessing.
+    """
+    if not steps:
+        raise InvalidParams('Empty pipeline')
+    unknown = [name for name in steps if name not in methods or name == 'pipeline']
+    if unknown:
+        raise InvalidParams('Unknown functions in pipeline: {}'.format(', '.join(unknown)))
+    result = params
+    for i, name in enumerate(steps):
+        result = methods[name](*(result if i == 0 or isinstance(result, tuple) else (result,)))
+    return result
+
 class NameSpace:
     def __init__(self, debug=False, obj=None, catchall=True):
         self.debug = debug
@@ -45,7 +131,29 @@ class NameSpace:
         """Adds all public methods of the object."""
         self.methods.update(get_public_methods(obj))
 
-    def handle_rpc(self, request):
+    def describe(self):
+        """Returns the signatures of the registered functions, see describe()."""
+        return describe(self.methods)
+
+    def pipeline(self, steps, *params):
+        """Calls the registered functions named by steps, each with the result of the previous one, see pipeline()."""
+        return pipeline(self.methods, steps, *params)
+
+    def handle_rpc(self, request, cancelled=()):
+        """Executes the request and returns the response.
+
+        Requests whose id is in cancelled or whose 'deadline' (ms since the epoch) has passed are not executed.
+        The response of a timed request carries the queue and execution time, see timing.py.
+        """
+        return timing.execute(request, lambda: self._execute(request, cancelled))
+
+    def _execute(self, request, cancelled):
+        if request.get('id') in cancelled:
+            return error_response(request, REQUEST_CANCELLED, 'Request cancelled')
+        deadline = request.get('deadline')
+        if deadline is not None and timing.now_millis() > deadline:
+            return error_response(request, DEADLINE_EXCEEDED, 'Deadline exceeded')
+        _current_call.call = (cancelled, request)
         try:
             name = request['method']
             func = self.methods[name]
@@ -61,6 +169,8 @@ class NameSpace:
                 'result': result,
                 # 'error': None,  # Removed by rkurmann for JSON-RPC 2.0 compliancy
             }
+        except InvalidParams as e:
+            return error_response(request, INVALID_PARAMS, str(e))
         except:
             if not self.catchall:
                 raise
@@ -74,6 +184,8 @@ class NameSpace:
                 response['traceback'] = traceback.format_exc()
 
             return response
+        finally:
+            _current_call.call = None
 
     def __call__(self, func):
         """This is called when the mapper is used as a decorator."""
@@ -0,0 +1,68 @@
+"""
+Priority scheduling of the requests of a stream connection.
+
+A request may carry the non standard attribute "priority": "high", "normal" (default) or "bulk".
+Queued requests of higher priority are executed first, e.g. latency-critical control calls before batch
+scoring sharing the connection. After FAIRNESS requests overtook older ones, the oldest queued request is
+executed regardless of its priority, thus bulk requests progress under sustained high priority load.
+"""
+
+from __future__ import division, unicode_literals, print_function, absolute_import, with_statement  # Ensure compatibility with Python 3
+import collections
+import itertools
+import threading
+
+__author__ = 'fyk'
+__url__ = 'github.com/makefile'
+
+PRIORITIES = ('high', 'normal', 'bulk')
+# Number of overtakes after which the oldest request is served
+FAIRNESS = 4
+
+def priority(request):
+    """Returns the lane of the request, unknown priorities are normal."""
+    value = request.get('priority') if isinstance(request, dict) else None
+    return PRIORITIES.index(value) if value in PRIORITIES else PRIORITIES.index('normal')
+
+class PriorityRequestQueue(object):
+    """Queue of (request, response) items, one FIFO lane per priority. Thread-safe."""
+
+    def __init__(self):
+        self.lanes = [collections.deque() for _ in PRIORITIES]
+        self.condition = threading.Condition()
+        self.sequence = itertools.count()
+        self.overtakes = 0
+        self.closed = False
+
+    def put(self, request, response):
+        """Queues the request with its response, or None if it is to be executed."""
+        with self.condition:
+            self.lanes[priority(request)].append((next(self.sequence), request, response))
+            self.condition.notify()
+
+    def close(self):
+        """Ends the queue, get() returns (None, None) once the queued requests are taken."""
+        with self.condition:
+            self.closed = True
+            self.condition.notify_all()
+
+    def get(self):
+        """Takes the next request, blocks while the queue is empty.
+
+        Returns (request, response), (None, None) if the queue is closed and empty.
+        """
+        with self.condition:
+            while not any(self.lanes):
+                if self.closed:
+                    return None, None
+                self.condition.wait()
+            oldest = min((lane for lane in self.lanes if lane), key=lambda lane: lane[0][0])
+            lane = next(lane for lane in self.lanes if lane)
+            if lane is not oldest:
+                self.overtakes += 1
+                if self.overtakes >= FAIRNESS:
+                    lane = oldest
+            if lane is oldest:
+                self.overtakes = 0
+            _, request, response = lane.popleft()
+            return request, response
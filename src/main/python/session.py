@@ -0,0 +1,50 @@
+"""
+Delta-encoded parameters of time-stepped sessions on a JSON-RPC stream connection.
+
+The session is opened with { "jsonrpc": "2.0", "method": "session_open", "params": [{...}], "id": 1},
+registering parameters which are constant for the whole session.
+A request with the non standard attribute "session": true carries as only parameter the delta of the
+parameters map to the previous call of the same function on the connection:
+- unchanged entries are omitted
+- removed entries are listed in "$removed"
+- arrays with few changes are sent as {"$delta": {"index": [...], "value": [...]}}
+
+The full parameters map is reconstructed before the function is called.
+Functions must not modify the lists of the parameters map in place, since they are kept for the next call.
+"""
+
+from __future__ import division, unicode_literals, print_function, absolute_import, with_statement  # Ensure compatibility with Python 3
+
+__author__ = 'fyk'
+__url__ = 'github.com/makefile'
+
+REMOVED = '$removed'
+DELTA = '$delta'
+
+class DeltaSession:
+    """State of the delta-encoded session of a connection."""
+    def __init__(self):
+        self.constants = {}
+        self.last = {}
+
+    def open(self, constants):
+        """Opens a new session with the constant parameters."""
+        self.constants = dict(constants or {})
+        self.last = {}
+
+    def apply(self, method, delta):
+        """Returns the full parameters of the call of method reconstructed from the delta."""
+        params = dict(self.last.get(method, self.constants))
+        for key in delta.get(REMOVED, []):
+            params.pop(key, None)
+        for key, value in delta.items():
+            if key == REMOVED:
+                continue
+            if isinstance(value, dict) and len(value) == 1 and DELTA in value:
+                array = list(params[key])
+                for i, v in zip(value[DELTA]['index'], value[DELTA]['value']):
+                    array[i] = v
+                value = array
+            params[key] = value
+        self.last[method] = params
+        return params
@@ -0,0 +1,57 @@
+"""
+Server side timing breakdown of a request, for tracing where the time of slow calls goes.
+
+A request carrying the non standard attribute "timing": true receives a timing block in its response:
+{"received": 1500000000000.0, "decode": 0.05, "queue": 0.01, "execute": 12.3, "encode": 0.02}
+"received" is the time the request has been read [ms since the epoch], the others are durations [ms]:
+decoding the request (json.loads, attachments, session), waiting for execution, executing the function
+and encoding the response (json.dumps).
+"""
+
+from __future__ import division, unicode_literals, print_function, absolute_import, with_statement  # Ensure compatibility with Python 3
+import json
+import time
+
+__author__ = 'fyk'
+__url__ = 'github.com/makefile'
+
+def now_millis():
+    """Returns the current time in milliseconds since the epoch, the unit of the 'deadline' request attribute."""
+    return time.time() * 1000
+
+def received(request, received_at):
+    """Starts the timing of a decoded request, if requested.
+
+    received_at is the time the request has been read, before decoding [ms since the epoch].
+    """
+    if request.get('timing') is True:
+        now = now_millis()
+        request['timing'] = {'received': received_at, 'decode': now - received_at, 'queued': now}
+
+def execute(request, func):
+    """Returns the response of func(), with the queue and execution time if the request is timed."""
+    timing = request.get('timing')
+    if not isinstance(timing, dict):
+        return func()
+    start = now_millis()
+    response = func()
+    response['timing'] = {
+        'received': timing['received'],
+        'decode': timing['decode'],
+        'queue': start - timing['queued'],
+        'execute': now_millis() - start,
+    }
+    return response
+
+def dumps(response, **kwargs):
+    """json.dumps() of the response, with the encode time added to its timing block if any.
+
+    The timing block is spliced into the encoded response, such that the encode time covers the whole response.
+    """
+    timing = response.pop('timing', None)
+    start = now_millis()
+    encoded = json.dumps(response, **kwargs)
+    if timing is None:
+        return encoded
+    timing['encode'] = now_millis() - start
+    return encoded[:-1] + ', "timing": ' + json.dumps(timing) + '}'